@@ -1,6 +1,7 @@
 package com.couchbase.lite;
 
 import com.couchbase.lite.util.Log;
+import com.couchbase.touchdb.JSONCollationKey;
 import com.couchbase.touchdb.RevCollator;
 import com.couchbase.touchdb.TDCollateJSON;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -111,6 +112,75 @@ public class CollationTest extends LiteTestCase {
 
     }
 
+    // compares the binary keys and checks they agree with the native collator
+    private int collateKeys(int mode, String string1, String string2) {
+        int result = JSONCollationKey.compare(JSONCollationKey.fromJSON(string1, mode), JSONCollationKey.fromJSON(string2, mode));
+        Assert.assertEquals(string1 + " vs " + string2, TDCollateJSON.testCollateJSONWrapper(mode, string1, string2), result);
+        return result;
+    }
+
+    public void testCollationKeys() {
+        int mode = kTDCollateJSON_Unicode;
+        Assert.assertEquals(1, collateKeys(mode, "true", "false"));
+        Assert.assertEquals(-1, collateKeys(mode, "null", "17"));
+        Assert.assertEquals(1, collateKeys(mode, "123", "1"));
+        Assert.assertEquals(0, collateKeys(mode, "123", "0123.0"));
+        Assert.assertEquals(-1, collateKeys(mode, "-5", "-1"));
+        Assert.assertEquals(-1, collateKeys(mode, "123", "\"123\""));
+        Assert.assertEquals(-1, collateKeys(mode, "\"123\"", "\"1234\""));
+        Assert.assertEquals(0, collateKeys(mode, "\"12\\/34\"", "\"12/34\""));
+        Assert.assertEquals(-1, collateKeys(mode, "\"a\"", "\"A\""));
+        Assert.assertEquals(-1, collateKeys(mode, "\"A\"", "\"aa\""));
+        Assert.assertEquals(1, collateKeys(mode, "\"B\"", "\"aa\""));
+        Assert.assertEquals(-1, collateKeys(mode, "\"_\"", "\"A\""));
+        Assert.assertEquals(0, collateKeys(mode, encode("fr\u00e9d"), encode("fr\u00e9d")));
+        Assert.assertEquals(-1, collateKeys(mode, encode("e"), encode("\u00e9")));
+        Assert.assertEquals(-1, collateKeys(mode, encode("\u00e9"), encode("f")));
+        Assert.assertEquals(1, collateKeys(mode, "[]", "\"foo\""));
+        Assert.assertEquals(-1, collateKeys(mode, "[]", "[null]"));
+        Assert.assertEquals(1, collateKeys(mode, "[123]", "[45,67]"));
+        Assert.assertEquals(1, collateKeys(mode, "[123.4,\"wow\"]", "[123.40,789]"));
+        Assert.assertEquals(1, collateKeys(mode, "[[]]", "[]"));
+        Assert.assertEquals(-1, collateKeys(mode, "[1,[2,3],4]", "[1,[2,3.1],4,5,6]"));
+        Assert.assertEquals(-1, collateKeys(mode, "{\"a\":1}", "{\"a\":1,\"b\":2}"));
+
+        mode = kTDCollateJSON_ASCII;
+        Assert.assertEquals(-1, collateKeys(mode, "\"A\"", "\"a\""));
+        Assert.assertEquals(-1, collateKeys(mode, "\"B\"", "\"a\""));
+        Assert.assertEquals(1, collateKeys(mode, "\"1234\"", "\"123\""));
+
+        mode = kTDCollateJSON_Raw;
+        Assert.assertEquals(1, collateKeys(mode, "false", "17"));
+        Assert.assertEquals(-1, collateKeys(mode, "null", "true"));
+        Assert.assertEquals(-1, collateKeys(mode, "[\"A\"]", "\"A\""));
+        Assert.assertEquals(-1, collateKeys(mode, "[\"b\"]", "[\"b\",\"c\",\"a\"]"));
+    }
+
+    // JSONCollationKey knowingly disagrees with the native collator on these, see its Javadoc
+    private int collateKeysDivergent(int mode, String string1, String string2, int nativeResult) {
+        Assert.assertEquals(nativeResult, TDCollateJSON.testCollateJSONWrapper(mode, string1, string2));
+        int result = JSONCollationKey.compare(JSONCollationKey.fromJSON(string1, mode), JSONCollationKey.fromJSON(string2, mode));
+        Assert.assertTrue(string1 + " vs " + string2, result != nativeResult);
+        return result;
+    }
+
+    public void testCollationKeyDivergences() {
+        int mode = kTDCollateJSON_Unicode;
+        // control characters are ignored by the Collator
+        Assert.assertEquals(0, collateKeysDivergent(mode, "\"\\u0001a\"", "\"a\"", -1));
+        // '`' and '^' sort after '%' for the Collator, right after space for the native table
+        Assert.assertEquals(1, collateKeysDivergent(mode, "\"`\"", "\"_\"", -1));
+        Assert.assertEquals(1, collateKeysDivergent(mode, "\"^\"", "\"-\"", -1));
+        // \\u escapes above 0x7F are truncated to their low byte by the native collator
+        Assert.assertEquals(1, collateKeysDivergent(mode, "\"\\u0141\"", "\"A\"", 0));
+
+        mode = kTDCollateJSON_ASCII;
+        Assert.assertEquals(1, collateKeysDivergent(mode, "\"\\u0141\"", "\"A\"", 0));
+        // no difference for '`' and '^' here, both sides compare bytes
+        Assert.assertEquals(1, collateKeys(mode, "\"`\"", "\"_\""));
+        Assert.assertEquals(-1, collateKeys(mode, "\"^\"", "\"_\""));
+    }
+
     public void testConvertEscape() {
         Assert.assertEquals('\\', TDCollateJSON.testEscape("\\\\"));
         Assert.assertEquals('\t', TDCollateJSON.testEscape("\\t"));
@@ -150,4 +220,49 @@ public class CollationTest extends LiteTestCase {
         Assert.assertEquals(RevCollator.testCollateRevIds("bogus-x", "yo-y"), -1);
     }
 
+    // compares (generation, digest) pairs and checks they agree with the REVID collator
+    private int collateRevIdColumns(String revId1, String revId2) {
+        int result = RevCollator.getGeneration(revId1) - RevCollator.getGeneration(revId2);
+        if (result == 0) {
+            result = JSONCollationKey.compare(RevCollator.getDigest(revId1), RevCollator.getDigest(revId2));
+        }
+        result = result > 0 ? 1 : (result < 0 ? -1 : 0);
+        Assert.assertEquals(revId1 + " vs " + revId2, RevCollator.testCollateRevIds(revId1, revId2), result);
+        return result;
+    }
+
+    public void testRevIdColumns() {
+        Assert.assertEquals(12, RevCollator.getGeneration("12-abc"));
+        Assert.assertEquals("abc", new String(RevCollator.getDigest("12-abc")));
+        Assert.assertEquals("12-abc", RevCollator.toRevId(12, RevCollator.getDigest("12-abc")));
+        Assert.assertEquals(0, RevCollator.getGeneration("bogus"));
+        Assert.assertEquals("bogus", RevCollator.toRevId(0, RevCollator.getDigest("bogus")));
+
+        Assert.assertEquals(0, collateRevIdColumns("1-foo", "1-foo"));
+        Assert.assertEquals(1, collateRevIdColumns("2-bar", "1-foo"));
+        Assert.assertEquals(-1, collateRevIdColumns("123-bar", "456-foo"));
+        Assert.assertEquals(-1, collateRevIdColumns("456-foo", "456-foofoo"));
+        Assert.assertEquals(-1, collateRevIdColumns("89-foo", "123-bar"));
+        Assert.assertEquals(-1, collateRevIdColumns("9-foo", "10-bar"));
+        Assert.assertEquals(1, collateRevIdColumns("123-", "89-"));
+        Assert.assertEquals(-1, collateRevIdColumns("-a", "-b"));
+        Assert.assertEquals(0, collateRevIdColumns("", ""));
+        Assert.assertEquals(-1, collateRevIdColumns("bogus", "yo"));
+        Assert.assertEquals(-1, collateRevIdColumns("123456789-a", "923456789-a"));
+    }
+
+    // an improper rev ID against a proper one: the pair says smaller, the collator compares text
+    private void assertRevIdColumnsDiverge(String improper, String proper) {
+        Assert.assertEquals(0, RevCollator.getGeneration(improper));
+        Assert.assertTrue(RevCollator.getGeneration(proper) > 0);
+        Assert.assertEquals(1, RevCollator.testCollateRevIds(improper, proper));
+    }
+
+    public void testRevIdColumnDivergences() {
+        assertRevIdColumnsDiverge("bogus", "1-foo");
+        // more than 8 digits
+        assertRevIdColumnsDiverge("923456789-a", "2-b");
+        assertRevIdColumnsDiverge("9a-x", "12-x");
+    }
+
 }
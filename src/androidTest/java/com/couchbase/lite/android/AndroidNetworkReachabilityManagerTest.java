@@ -0,0 +1,163 @@
+package com.couchbase.lite.android;
+
+import com.couchbase.lite.LiteTestCase;
+import com.couchbase.lite.NetworkReachabilityListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class AndroidNetworkReachabilityManagerTest extends LiteTestCase {
+
+    public static final String TAG = "AndroidNetworkReachabilityManagerTest";
+
+    public void testReplicationSettingsPerNetworkClass() {
+        assertEquals(200, SimulatedNetworkReachabilityManager.WIFI.getChangesBatchSize());
+        assertEquals(4, SimulatedNetworkReachabilityManager.WIFI.getBulkGetConcurrency());
+        assertTrue(SimulatedNetworkReachabilityManager.WIFI.isAttachmentPrefetchEnabled());
+
+        assertEquals(100, SimulatedNetworkReachabilityManager.METERED_WIFI.getChangesBatchSize());
+        assertEquals(2, SimulatedNetworkReachabilityManager.METERED_WIFI.getBulkGetConcurrency());
+        assertFalse(SimulatedNetworkReachabilityManager.METERED_WIFI.isAttachmentPrefetchEnabled());
+
+        assertEquals(100, SimulatedNetworkReachabilityManager.CELLULAR_LTE.getChangesBatchSize());
+        assertEquals(2, SimulatedNetworkReachabilityManager.CELLULAR_LTE.getBulkGetConcurrency());
+        assertFalse(SimulatedNetworkReachabilityManager.CELLULAR_LTE.isAttachmentPrefetchEnabled());
+
+        assertEquals(100, SimulatedNetworkReachabilityManager.CELLULAR_3G.getChangesBatchSize());
+        assertEquals(2, SimulatedNetworkReachabilityManager.CELLULAR_3G.getBulkGetConcurrency());
+
+        assertEquals(50, SimulatedNetworkReachabilityManager.CELLULAR_2G.getChangesBatchSize());
+        assertEquals(1, SimulatedNetworkReachabilityManager.CELLULAR_2G.getBulkGetConcurrency());
+        assertFalse(SimulatedNetworkReachabilityManager.CELLULAR_2G.isAttachmentPrefetchEnabled());
+
+        assertFalse(SimulatedNetworkReachabilityManager.OFFLINE.isConnected());
+        assertFalse(SimulatedNetworkReachabilityManager.OFFLINE.isAttachmentPrefetchEnabled());
+    }
+
+    public void testNetworkQualityListener() {
+        SimulatedNetworkReachabilityManager manager = new SimulatedNetworkReachabilityManager(new AndroidContext(getContext()));
+        manager.setFlapWindowMillis(0);
+        final List<NetworkQuality> changes = new ArrayList<NetworkQuality>();
+        manager.addNetworkQualityListener(new AndroidNetworkReachabilityManager.NetworkQualityListener() {
+            @Override
+            public void networkQualityChanged(NetworkQuality quality) {
+                changes.add(quality);
+            }
+        });
+
+        manager.simulate(SimulatedNetworkReachabilityManager.WIFI);
+        manager.simulate(SimulatedNetworkReachabilityManager.WIFI);
+        manager.simulate(SimulatedNetworkReachabilityManager.CELLULAR_2G);
+        manager.simulate(SimulatedNetworkReachabilityManager.OFFLINE);
+        manager.simulate(new NetworkQuality(NetworkQuality.Transport.WIFI, NetworkQuality.BandwidthClass.HIGH, false));
+
+        // the repeated WIFI change is not reported
+        assertEquals(4, changes.size());
+        assertEquals(SimulatedNetworkReachabilityManager.WIFI, changes.get(0));
+        assertEquals(SimulatedNetworkReachabilityManager.CELLULAR_2G, changes.get(1));
+        assertEquals(SimulatedNetworkReachabilityManager.OFFLINE, changes.get(2));
+        assertEquals(SimulatedNetworkReachabilityManager.WIFI, changes.get(3));
+        assertEquals(SimulatedNetworkReachabilityManager.WIFI, manager.getNetworkQuality());
+    }
+
+    // Long enough that two calls in a row never take longer, even on a slow emulator
+    private static final long FLAP_WINDOW_MILLIS = 2000;
+
+    public void testShortFlapIsNotReported() throws Exception {
+        SimulatedNetworkReachabilityManager manager = new SimulatedNetworkReachabilityManager(new AndroidContext(getContext()));
+        manager.setFlapWindowMillis(FLAP_WINDOW_MILLIS);
+        manager.simulate(SimulatedNetworkReachabilityManager.WIFI);
+        CountingListener listener = new CountingListener();
+        manager.addNetworkReachabilityListener(listener);
+
+        manager.simulate(SimulatedNetworkReachabilityManager.OFFLINE);
+        manager.simulate(SimulatedNetworkReachabilityManager.WIFI);
+
+        // the timer runs its tasks in order, so once this outage is reported the flap's task has
+        // run too, and reported nothing
+        manager.simulate(SimulatedNetworkReachabilityManager.OFFLINE);
+        assertTrue(listener.awaitUnreachable(10 * FLAP_WINDOW_MILLIS));
+        assertEquals(1, listener.unreachable);
+        assertEquals(0, listener.reachable);
+    }
+
+    public void testLongOutageIsReported() throws Exception {
+        SimulatedNetworkReachabilityManager manager = new SimulatedNetworkReachabilityManager(new AndroidContext(getContext()));
+        manager.setFlapWindowMillis(FLAP_WINDOW_MILLIS);
+        manager.simulate(SimulatedNetworkReachabilityManager.WIFI);
+        CountingListener listener = new CountingListener();
+        manager.addNetworkReachabilityListener(listener);
+
+        manager.simulate(SimulatedNetworkReachabilityManager.OFFLINE);
+        assertEquals(0, listener.unreachable);
+        assertTrue(listener.awaitUnreachable(10 * FLAP_WINDOW_MILLIS));
+        assertEquals(1, listener.unreachable);
+
+        // coming back is reported right away
+        manager.simulate(SimulatedNetworkReachabilityManager.CELLULAR_3G);
+        assertEquals(1, listener.reachable);
+
+        // and so is switching networks
+        manager.simulate(SimulatedNetworkReachabilityManager.WIFI);
+        assertEquals(2, listener.reachable);
+        assertEquals(1, listener.unreachable);
+    }
+
+    public void testNetworkSwitchIsReported() throws Exception {
+        SimulatedNetworkReachabilityManager manager = new SimulatedNetworkReachabilityManager(new AndroidContext(getContext()));
+        manager.setFlapWindowMillis(FLAP_WINDOW_MILLIS);
+        manager.simulate(SimulatedNetworkReachabilityManager.WIFI);
+        CountingListener listener = new CountingListener();
+        manager.addNetworkReachabilityListener(listener);
+
+        // straight from wifi to cellular
+        manager.simulate(SimulatedNetworkReachabilityManager.CELLULAR_LTE);
+        assertEquals(1, listener.reachable);
+
+        // a change of bandwidth on the same network is not a switch
+        manager.simulate(SimulatedNetworkReachabilityManager.CELLULAR_3G);
+        assertEquals(1, listener.reachable);
+
+        // nor is a flap that comes back on the same network, but one that comes back on
+        // another network is
+        manager.simulate(SimulatedNetworkReachabilityManager.OFFLINE);
+        manager.simulate(SimulatedNetworkReachabilityManager.WIFI);
+        assertEquals(2, listener.reachable);
+
+        // once a later outage is reported, the flap's task has run without reporting anything
+        manager.simulate(SimulatedNetworkReachabilityManager.OFFLINE);
+        assertTrue(listener.awaitUnreachable(10 * FLAP_WINDOW_MILLIS));
+        assertEquals(1, listener.unreachable);
+        manager.simulate(SimulatedNetworkReachabilityManager.WIFI);
+        assertEquals(3, listener.reachable);
+
+        // a change still pending when listening stops is dropped
+        manager.simulate(SimulatedNetworkReachabilityManager.OFFLINE);
+        manager.stopListening();
+        assertFalse(listener.awaitUnreachable(2 * FLAP_WINDOW_MILLIS));
+        assertEquals(1, listener.unreachable);
+    }
+
+    private static class CountingListener implements NetworkReachabilityListener {
+        volatile int reachable;
+        volatile int unreachable;
+        private final Semaphore unreachableReported = new Semaphore(0);
+
+        @Override
+        public void networkReachable() {
+            reachable++;
+        }
+
+        @Override
+        public void networkUnreachable() {
+            unreachable++;
+            unreachableReported.release();
+        }
+
+        boolean awaitUnreachable(long timeoutMillis) throws InterruptedException {
+            return unreachableReported.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
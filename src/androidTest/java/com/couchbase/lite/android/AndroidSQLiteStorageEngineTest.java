@@ -0,0 +1,479 @@
+package com.couchbase.lite.android;
+
+import com.couchbase.lite.LiteTestCase;
+import com.couchbase.lite.LiteTestContext;
+import com.couchbase.lite.storage.ContentValues;
+import com.couchbase.lite.storage.Cursor;
+import com.couchbase.lite.storage.SQLException;
+import com.couchbase.lite.storage.SQLiteStorageEngine;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AndroidSQLiteStorageEngineTest extends LiteTestCase {
+
+    public static final String TAG = "AndroidSQLiteStorageEngineTest";
+
+    private AndroidSQLiteStorageEngine engine;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        engine = openEngine(new AndroidStorageEngineOptions());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (engine != null && engine.isOpen()) {
+            engine.close();
+        }
+        super.tearDown();
+    }
+
+    private AndroidSQLiteStorageEngine openEngine(AndroidStorageEngineOptions options) {
+        File dir = new LiteTestContext("engine-test").getFilesDir();
+        AndroidSQLiteStorageEngine storageEngine = new AndroidSQLiteStorageEngine(options);
+        assertTrue(storageEngine.open(new File(dir, "engine.sqlite3").getAbsolutePath()));
+        storageEngine.execSQL("CREATE TABLE docs (doc_id INTEGER PRIMARY KEY, docid TEXT UNIQUE NOT NULL, json BLOB)");
+        return storageEngine;
+    }
+
+    private int countDocs() {
+        Cursor cursor = engine.rawQuery("SELECT count(*) FROM docs", null);
+        try {
+            assertTrue(cursor.moveToNext());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testExecSQLWithCachedStatements() {
+        for (int i = 0; i < 100; i++) {
+            engine.execSQL("INSERT INTO docs (docid, json) VALUES (?, ?)", new Object[]{"doc" + i, new byte[]{(byte) i}});
+        }
+        assertEquals(100, countDocs());
+
+        engine.execSQL("DELETE FROM docs WHERE doc_id > ?", new Object[]{50L});
+        assertEquals(50, countDocs());
+    }
+
+    public void testCompileStatement() {
+        AndroidSQLiteStatement insert = engine.compileStatement("INSERT INTO docs (docid, json) VALUES (?, ?)");
+        long rowId;
+        try {
+            insert.bindString(1, "doc1");
+            insert.bindBlob(2, null);
+            rowId = insert.executeInsert();
+        } finally {
+            insert.close();
+        }
+        assertTrue(rowId > 0);
+
+        AndroidSQLiteStatement lookup = engine.compileStatement("SELECT doc_id FROM docs WHERE docid=?");
+        try {
+            lookup.bindString(1, "doc1");
+            assertEquals(rowId, lookup.simpleQueryForLong());
+        } finally {
+            lookup.close();
+        }
+    }
+
+    public void testInsertAndUpdateContentValues() {
+        ContentValues values = new ContentValues();
+        values.put("docid", "doc1");
+        values.put("json", new byte[]{1, 2, 3});
+        long rowId = engine.insert("docs", null, values);
+        assertTrue(rowId > 0);
+
+        // duplicate docid: insert() logs and returns -1, CONFLICT_IGNORE silently skips the row
+        assertEquals(-1, engine.insert("docs", null, values));
+        assertEquals(-1, engine.insertWithOnConflict("docs", null, values, SQLiteStorageEngine.CONFLICT_IGNORE));
+
+        ContentValues update = new ContentValues();
+        update.put("json", (byte[]) null);
+        assertEquals(1, engine.update("docs", update, "docid=?", new String[]{"doc1"}));
+        assertEquals(0, engine.update("docs", update, "docid=?", new String[]{"missing"}));
+
+        Cursor cursor = engine.rawQuery("SELECT doc_id, json FROM docs WHERE docid=?", new String[]{"doc1"});
+        try {
+            assertTrue(cursor.moveToNext());
+            assertEquals(rowId, cursor.getLong(0));
+            assertTrue(cursor.isNull(1));
+        } finally {
+            cursor.close();
+        }
+
+        // a null where-arg is bound as NULL
+        ContentValues restore = new ContentValues();
+        restore.put("json", new byte[]{4});
+        assertEquals(1, engine.update("docs", restore, "json IS ?", new String[]{null}));
+        assertEquals(0, engine.update("docs", restore, "json IS ?", new String[]{null}));
+    }
+
+    public void testInsertBatch() {
+        List<ContentValues> rows = new ArrayList<ContentValues>();
+        for (int i = 0; i < 1000; i++) {
+            ContentValues values = new ContentValues();
+            values.put("docid", "doc" + i);
+            if (i % 2 == 0) {
+                values.put("json", new byte[]{(byte) i});
+            }
+            rows.add(values);
+        }
+        // a duplicate, skipped by CONFLICT_IGNORE
+        rows.add(rows.get(0));
+
+        long[] rowIds = engine.insertBatch("docs", rows, SQLiteStorageEngine.CONFLICT_IGNORE);
+        assertEquals(1001, rowIds.length);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(rowIds[i] > 0);
+        }
+        assertEquals(-1, rowIds[1000]);
+        assertEquals(1000, countDocs());
+
+        // all or nothing
+        try {
+            engine.insertBatch("docs", rows, SQLiteStorageEngine.CONFLICT_ABORT);
+            fail("Expected a constraint violation");
+        } catch (SQLException e) {
+            // expected
+        }
+        assertEquals(1000, countDocs());
+    }
+
+    public void testInsertBatchRollsBack() {
+        List<ContentValues> rows = new ArrayList<ContentValues>();
+        for (int i = 0; i < 10; i++) {
+            ContentValues values = new ContentValues();
+            values.put("docid", "doc" + i);
+            rows.add(values);
+        }
+        // a row in the middle breaks the NOT NULL constraint on docid
+        ContentValues bad = new ContentValues();
+        bad.put("json", new byte[]{1});
+        rows.set(5, bad);
+
+        try {
+            engine.insertBatch("docs", rows, SQLiteStorageEngine.CONFLICT_ABORT);
+            fail("Expected a constraint violation");
+        } catch (SQLException e) {
+            assertTrue(e.getCause() instanceof android.database.SQLException);
+        }
+        // the rows before it were rolled back too
+        assertEquals(0, countDocs());
+    }
+
+    public void testWithoutStatementCache() {
+        engine.close();
+        AndroidStorageEngineOptions options = new AndroidStorageEngineOptions();
+        options.setStatementCacheSize(0);
+        engine = openEngine(options);
+
+        engine.execSQL("INSERT INTO docs (docid, json) VALUES (?, ?)", new Object[]{"doc", null});
+        assertEquals(1, countDocs());
+
+        // falls back to converting to android.content.ContentValues
+        ContentValues values = new ContentValues();
+        values.put("docid", "doc2");
+        assertTrue(engine.insert("docs", null, values) > 0);
+        assertEquals(2, countDocs());
+    }
+
+    public void testWriteAheadLogging() {
+        engine.close();
+        AndroidStorageEngineOptions options = new AndroidStorageEngineOptions();
+        options.setJournalMode(AndroidStorageEngineOptions.JournalMode.WAL);
+        options.setCheckpointInterval(1);
+        engine = openEngine(options);
+
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.HONEYCOMB) {
+            assertTrue(engine.isWriteAheadLoggingEnabled());
+        }
+        engine.beginTransaction();
+        try {
+            engine.execSQL("INSERT INTO docs (docid, json) VALUES (?, ?)", new Object[]{"doc", null});
+            engine.setTransactionSuccessful();
+        } finally {
+            engine.endTransaction();
+        }
+        assertEquals(1, countDocs());
+    }
+
+    public void testReadConnectionPool() throws Exception {
+        if (android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        engine.close();
+        AndroidStorageEngineOptions options = new AndroidStorageEngineOptions();
+        options.setJournalMode(AndroidStorageEngineOptions.JournalMode.WAL);
+        options.setReadConnectionPoolSize(2);
+        engine = openEngine(options);
+
+        engine.execSQL("INSERT INTO docs (docid, json) VALUES (?, ?)", new Object[]{"doc1", null});
+        // read connections see committed data
+        assertEquals(1, countDocs());
+        Cursor cursor = engine.rawQuery("SELECT docid FROM docs WHERE docid=?", new String[]{"doc1"});
+        try {
+            assertTrue(cursor.moveToNext());
+        } finally {
+            cursor.close();
+        }
+
+        engine.beginTransaction();
+        try {
+            engine.execSQL("INSERT INTO docs (docid, json) VALUES (?, ?)", new Object[]{"doc2", null});
+            // reads inside a transaction use the writer and see its uncommitted rows
+            assertEquals(2, countDocs());
+
+            // other threads read from the pool and don't see them
+            final int[] otherThreadCount = new int[1];
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    otherThreadCount[0] = countDocs();
+                }
+            });
+            reader.start();
+            reader.join();
+            assertEquals(1, otherThreadCount[0]);
+            engine.setTransactionSuccessful();
+        } finally {
+            engine.endTransaction();
+        }
+        assertEquals(2, countDocs());
+    }
+
+    public void testOpenTimings() {
+        engine.close();
+        StorageEngineStats stats = new StorageEngineStats();
+        AndroidStorageEngineOptions options = new AndroidStorageEngineOptions();
+        options.setStats(stats);
+        engine = openEngine(options);
+        engine.setVersion(3);
+
+        OpenTimings timings = engine.getOpenTimings();
+        List<String> phases = new ArrayList<String>();
+        for (OpenTimings.Phase phase : timings.getPhases()) {
+            phases.add(phase.getName());
+        }
+        assertTrue(phases.contains(OpenTimings.PHASE_OPEN_DATABASE));
+        assertTrue(phases.contains(OpenTimings.PHASE_REGISTER_COLLATORS));
+        assertTrue(phases.contains(OpenTimings.PHASE_CONFIGURE));
+        engine.close();
+
+        engine = new AndroidSQLiteStorageEngine(options);
+        assertTrue(engine.open(timings.getPath()));
+        assertEquals(3, engine.getVersion());
+        assertEquals(2, stats.getOpenTimings().size());
+
+        // only the first read of the version is part of opening
+        engine.getVersion();
+        int schemaChecks = 0;
+        for (OpenTimings.Phase phase : engine.getOpenTimings().getPhases()) {
+            if (OpenTimings.PHASE_SCHEMA_CHECK.equals(phase.getName())) {
+                schemaChecks++;
+            }
+        }
+        assertEquals(1, schemaChecks);
+    }
+
+    public void testReopenWithWriteAheadLogging() {
+        if (android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        engine.close();
+        AndroidStorageEngineOptions options = new AndroidStorageEngineOptions();
+        options.setJournalMode(AndroidStorageEngineOptions.JournalMode.WAL);
+        engine = openEngine(options);
+        String path = engine.getOpenTimings().getPath();
+        engine.close();
+
+        engine = new AndroidSQLiteStorageEngine(options);
+        assertTrue(engine.open(path));
+        assertTrue(engine.isWriteAheadLoggingEnabled());
+        Cursor cursor = engine.rawQuery("PRAGMA journal_mode", null);
+        try {
+            assertTrue(cursor.moveToNext());
+            assertEquals("wal", cursor.getString(0).toLowerCase());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testHandlePool() {
+        engine.close();
+        AndroidStorageEngineOptions options = new AndroidStorageEngineOptions();
+        options.setHandlePoolIdleMillis(60 * 1000);
+        engine = openEngine(options);
+        String path = engine.getOpenTimings().getPath();
+        try {
+            engine.execSQL("INSERT INTO docs (docid, json) VALUES (?, ?)", new Object[]{"doc", null});
+            engine.close();
+            assertFalse(engine.isOpen());
+            assertEquals(1, SQLiteHandlePool.getInstance().size());
+
+            engine = new AndroidSQLiteStorageEngine(options);
+            assertTrue(engine.open(path));
+            assertEquals(OpenTimings.PHASE_REUSE_HANDLE, engine.getOpenTimings().getPhases().get(0).getName());
+            assertEquals(0, SQLiteHandlePool.getInstance().size());
+            assertEquals(1, countDocs());
+            engine.close();
+
+            // only reused with the same options, and the handle that wasn't is closed
+            engine = new AndroidSQLiteStorageEngine(new AndroidStorageEngineOptions());
+            assertTrue(engine.open(path));
+            assertFalse(OpenTimings.PHASE_REUSE_HANDLE.equals(engine.getOpenTimings().getPhases().get(0).getName()));
+            assertEquals(0, SQLiteHandlePool.getInstance().size());
+            engine.close();
+
+            // nothing fits in a budget of 0
+            AndroidSQLiteStorageEngine.setHandlePoolMemoryBudget(0);
+            engine = new AndroidSQLiteStorageEngine(options);
+            assertTrue(engine.open(path));
+            engine.close();
+            assertEquals(0, SQLiteHandlePool.getInstance().size());
+        } finally {
+            AndroidSQLiteStorageEngine.setHandlePoolMemoryBudget(AndroidSQLiteStorageEngine.DEFAULT_HANDLE_POOL_MEMORY_BUDGET);
+            AndroidSQLiteStorageEngine.closePooledHandles();
+        }
+    }
+
+    public void testHandlePoolWithReplacedFile() {
+        engine.close();
+        AndroidStorageEngineOptions options = new AndroidStorageEngineOptions();
+        options.setHandlePoolIdleMillis(60 * 1000);
+        engine = openEngine(options);
+        String path = engine.getOpenTimings().getPath();
+        try {
+            engine.execSQL("INSERT INTO docs (docid, json) VALUES (?, ?)", new Object[]{"doc", null});
+            engine.close();
+            assertEquals(1, SQLiteHandlePool.getInstance().size());
+
+            // deletes the file and creates a new one at the same path
+            engine = openEngine(options);
+            assertEquals(path, engine.getOpenTimings().getPath());
+            assertFalse(OpenTimings.PHASE_REUSE_HANDLE.equals(engine.getOpenTimings().getPhases().get(0).getName()));
+            assertEquals(0, SQLiteHandlePool.getInstance().size());
+            assertEquals(0, countDocs());
+            engine.close();
+
+            AndroidSQLiteStorageEngine.closePooledHandles(path);
+            assertEquals(0, SQLiteHandlePool.getInstance().size());
+        } finally {
+            AndroidSQLiteStorageEngine.closePooledHandles();
+        }
+    }
+
+    public void testCloseTwice() {
+        engine.close();
+        engine.close();
+        assertFalse(engine.isOpen());
+
+        AndroidStorageEngineOptions options = new AndroidStorageEngineOptions();
+        options.setHandlePoolIdleMillis(60 * 1000);
+        engine = openEngine(options);
+        try {
+            engine.close();
+            engine.close();
+            assertFalse(engine.isOpen());
+            assertEquals(1, SQLiteHandlePool.getInstance().size());
+        } finally {
+            AndroidSQLiteStorageEngine.closePooledHandles();
+        }
+    }
+
+    public void testTuningProfile() {
+        engine.close();
+        AndroidStorageEngineOptions options = new AndroidStorageEngineOptions();
+        options.setTuningProfile(StorageTuningProfile.forName("low-memory"));
+        engine = openEngine(options);
+
+        Cursor cursor = engine.rawQuery("PRAGMA cache_size", null);
+        try {
+            assertTrue(cursor.moveToNext());
+            assertEquals(StorageTuningProfile.LOW_MEMORY.getCacheSize().intValue(), cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+        // NORMAL without WAL isn't safe, FULL (2) is kept
+        assertEquals(2, querySynchronous());
+        engine.close();
+
+        options.setJournalMode(AndroidStorageEngineOptions.JournalMode.WAL);
+        engine = openEngine(options);
+        assertEquals(1, querySynchronous());
+    }
+
+    private int querySynchronous() {
+        Cursor cursor = engine.rawQuery("PRAGMA synchronous", null);
+        try {
+            assertTrue(cursor.moveToNext());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testStats() {
+        assertEquals("SELECT * FROM revs WHERE doc_id=? AND revid=? AND sequence IN (?)",
+                StorageEngineStats.normalize("SELECT * FROM revs WHERE doc_id=12  AND revid='1-a''b' AND sequence IN (1, 2,3)"));
+
+        engine.close();
+        StorageEngineStats stats = new StorageEngineStats();
+        AndroidStorageEngineOptions options = new AndroidStorageEngineOptions();
+        options.setStats(stats);
+        engine = openEngine(options);
+
+        for (int i = 0; i < 10; i++) {
+            engine.execSQL("INSERT INTO docs (docid) VALUES ('doc" + i + "')");
+        }
+        assertEquals(10, countDocs());
+
+        StorageEngineStats.SqlStats insertStats = null;
+        StorageEngineStats.SqlStats countStats = null;
+        for (StorageEngineStats.SqlStats sqlStats : stats.getSnapshot()) {
+            if (sqlStats.getSql().equals("INSERT INTO docs (docid) VALUES (?)")) {
+                insertStats = sqlStats;
+            } else if (sqlStats.getSql().equals("SELECT count(*) FROM docs")) {
+                countStats = sqlStats;
+            }
+        }
+        assertNotNull(insertStats);
+        assertEquals(10, insertStats.getCount());
+        assertNotNull(countStats);
+        assertEquals(1, countStats.getCount());
+        assertEquals(1, countStats.getRows());
+        assertTrue(stats.dump().contains("SELECT count(*) FROM docs"));
+    }
+
+    public void testSlowQueryLog() {
+        engine.close();
+        SlowQueryLog slowQueryLog = new SlowQueryLog(0, 2);
+        AndroidStorageEngineOptions options = new AndroidStorageEngineOptions();
+        options.setSlowQueryLog(slowQueryLog);
+        engine = openEngine(options);
+
+        // with a threshold of 0 everything is slow, but each shape is only captured once
+        for (int i = 0; i < 5; i++) {
+            Cursor cursor = engine.rawQuery("SELECT doc_id FROM docs WHERE docid=?", new String[]{"doc" + i});
+            cursor.moveToNext();
+            cursor.close();
+        }
+
+        List<SlowQueryLog.Entry> entries = slowQueryLog.getEntries();
+        // the CREATE TABLE run by openEngine() and the SELECT
+        assertEquals(2, entries.size());
+        SlowQueryLog.Entry entry = entries.get(1);
+        assertEquals("SELECT doc_id FROM docs WHERE docid=?", entry.getSql());
+        assertEquals("[String]", entry.getArgTypes());
+        assertTrue(entry.getQueryPlan(), entry.getQueryPlan().contains("docs"));
+
+        // the ring buffer keeps the newest entries
+        engine.execSQL("DELETE FROM docs");
+        entries = slowQueryLog.getEntries();
+        assertEquals(2, entries.size());
+        assertEquals("DELETE FROM docs", entries.get(1).getSql());
+    }
+}
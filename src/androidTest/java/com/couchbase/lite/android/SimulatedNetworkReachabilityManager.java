@@ -0,0 +1,35 @@
+package com.couchbase.lite.android;
+
+/**
+ * Stand-in for AndroidNetworkReachabilityManager that never registers for connectivity
+ * broadcasts; tests switch the network with simulate() instead.
+ */
+public class SimulatedNetworkReachabilityManager extends AndroidNetworkReachabilityManager {
+
+    public static final NetworkQuality WIFI = new NetworkQuality(NetworkQuality.Transport.WIFI, NetworkQuality.BandwidthClass.HIGH, false);
+    public static final NetworkQuality METERED_WIFI = new NetworkQuality(NetworkQuality.Transport.WIFI, NetworkQuality.BandwidthClass.HIGH, true);
+    public static final NetworkQuality CELLULAR_LTE = new NetworkQuality(NetworkQuality.Transport.CELLULAR, NetworkQuality.BandwidthClass.HIGH, true);
+    public static final NetworkQuality CELLULAR_3G = new NetworkQuality(NetworkQuality.Transport.CELLULAR, NetworkQuality.BandwidthClass.MEDIUM, true);
+    public static final NetworkQuality CELLULAR_2G = new NetworkQuality(NetworkQuality.Transport.CELLULAR, NetworkQuality.BandwidthClass.LOW, true);
+    public static final NetworkQuality OFFLINE = NetworkQuality.OFFLINE;
+
+    private volatile NetworkQuality simulatedQuality = WIFI;
+
+    public SimulatedNetworkReachabilityManager(AndroidContext context) {
+        super(context);
+    }
+
+    @Override
+    public synchronized void startListening() {
+    }
+
+    @Override
+    public NetworkQuality getNetworkQuality() {
+        return simulatedQuality;
+    }
+
+    public void simulate(NetworkQuality quality) {
+        simulatedQuality = quality;
+        networkChanged(quality);
+    }
+}
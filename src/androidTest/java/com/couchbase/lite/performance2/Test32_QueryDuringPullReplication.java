@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.performance2;
+
+import com.couchbase.lite.Database;
+import com.couchbase.lite.LitePerfTestCase;
+import com.couchbase.lite.LiteTestContext;
+import com.couchbase.lite.Manager;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.QueryEnumerator;
+import com.couchbase.lite.android.AndroidSQLiteStorageEngineFactory;
+import com.couchbase.lite.android.AndroidStorageEngineOptions;
+import com.couchbase.lite.replicator.Replication;
+import com.couchbase.lite.storage.SQLiteStorageEngineFactory;
+import com.couchbase.lite.util.Log;
+
+import junit.framework.Assert;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of a small query run repeatedly while a pull replication is writing
+ * into the same database, with the default journal mode, with WAL and with WAL plus a pool of
+ * read connections.
+ */
+public class Test32_QueryDuringPullReplication extends LitePerfTestCase {
+
+    public static final String TAG = "Test32_QueryDuringPullReplication";
+
+    public double runOne(final int numberOfDocuments, final int sizeOfDocuments) throws Exception {
+        char[] array = new char[sizeOfDocuments];
+        Arrays.fill(array, '*');
+        String body = new String(array);
+        final Map<String, Object> props = new HashMap<String, Object>();
+        props.put("k", body);
+
+        String docIdTimestamp = Long.toString(System.currentTimeMillis());
+
+        for (int i = 0; i < numberOfDocuments; i++) {
+            String docId = String.format("doc%d-%s", i, docIdTimestamp);
+            try {
+                addDocWithId(docId, props, null, false);
+            } catch (IOException ioex) {
+                Log.v("PerformanceStats",TAG+", Add document failed", ioex);
+                fail();
+            }
+        }
+
+        URL remote = getReplicationURL();
+        final Replication replPush = database.createPushReplication(remote);
+        replPush.setContinuous(false);
+        if (!isSyncGateway(remote)) {
+            replPush.setCreateTarget(true);
+            Assert.assertTrue(replPush.shouldCreateTarget());
+        }
+        runReplication(replPush);
+
+        AndroidStorageEngineOptions defaultOptions = new AndroidStorageEngineOptions();
+        double defaultLatency = queryLatencyDuringPull(remote, defaultOptions);
+
+        AndroidStorageEngineOptions walOptions = new AndroidStorageEngineOptions();
+        walOptions.setJournalMode(AndroidStorageEngineOptions.JournalMode.WAL);
+        walOptions.setCheckpointInterval(100);
+        double walLatency = queryLatencyDuringPull(remote, walOptions);
+
+        AndroidStorageEngineOptions readPoolOptions = new AndroidStorageEngineOptions();
+        readPoolOptions.setJournalMode(AndroidStorageEngineOptions.JournalMode.WAL);
+        readPoolOptions.setCheckpointInterval(100);
+        readPoolOptions.setReadConnectionPoolSize(2);
+        double readPoolLatency = queryLatencyDuringPull(remote, readPoolOptions);
+
+        Log.v("PerformanceStats",TAG+", default journal avg query ms: "+String.format("%.2f",defaultLatency)+
+                ", WAL avg query ms: "+String.format("%.2f",walLatency)+
+                ", WAL + read pool avg query ms: "+String.format("%.2f",readPoolLatency)+","+numberOfDocuments+","+sizeOfDocuments);
+        return walLatency;
+    }
+
+    /**
+     * Pulls into an empty database opened with the given options and returns the average
+     * latency in milliseconds of the queries run while the pull was in progress.
+     */
+    private double queryLatencyDuringPull(URL remote, final AndroidStorageEngineOptions options) throws Exception {
+        LiteTestContext context = new LiteTestContext("test-pull-" + options.getJournalMode() + "-" + options.getReadConnectionPoolSize()) {
+            @Override
+            public SQLiteStorageEngineFactory getSQLiteStorageEngineFactory() {
+                return new AndroidSQLiteStorageEngineFactory(options);
+            }
+        };
+        Manager pullManager = new Manager(context, Manager.DEFAULT_OPTIONS);
+        try {
+            Database pullDatabase = pullManager.getDatabase("cblite-test-pull");
+
+            final CountDownLatch replicationDoneSignal = new CountDownLatch(1);
+            Replication replPull = pullDatabase.createPullReplication(remote);
+            replPull.setContinuous(false);
+            replPull.addChangeListener(new ReplicationFinishedObserver(replicationDoneSignal));
+            replPull.start();
+
+            int numberOfQueries = 0;
+            long totalNanos = 0;
+            long maxNanos = 0;
+            while (replicationDoneSignal.getCount() > 0) {
+                long start = System.nanoTime();
+                Query query = pullDatabase.createAllDocumentsQuery();
+                query.setLimit(50);
+                QueryEnumerator rows = query.run();
+                while (rows.hasNext()) {
+                    rows.next();
+                }
+                long elapsed = System.nanoTime() - start;
+                totalNanos += elapsed;
+                maxNanos = Math.max(maxNanos, elapsed);
+                numberOfQueries++;
+            }
+            assertTrue(replicationDoneSignal.await(300, TimeUnit.SECONDS));
+
+            if (numberOfQueries == 0) {
+                return 0;
+            }
+            double avgMillis = totalNanos / 1000000.0 / numberOfQueries;
+            Log.v("PerformanceStats",TAG+", "+options+": "+numberOfQueries+" queries, avg "+
+                    String.format("%.2f",avgMillis)+" ms, max "+String.format("%.2f",maxNanos / 1000000.0)+" ms");
+            return avgMillis;
+        } finally {
+            pullManager.close();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.performance2;
+
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.Emitter;
+import com.couchbase.lite.LitePerfTestCase;
+import com.couchbase.lite.LiteTestContext;
+import com.couchbase.lite.Manager;
+import com.couchbase.lite.Mapper;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.QueryEnumerator;
+import com.couchbase.lite.TransactionalTask;
+import com.couchbase.lite.View;
+import com.couchbase.lite.android.AndroidSQLiteStorageEngineFactory;
+import com.couchbase.lite.android.AndroidStorageEngineOptions;
+import com.couchbase.lite.android.StorageTuningProfile;
+import com.couchbase.lite.storage.SQLiteStorageEngineFactory;
+import com.couchbase.lite.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs create, query and compact against a database opened with each built-in
+ * StorageTuningProfile and reports the time each step takes.
+ */
+public class Test33_StorageTuningProfiles extends LitePerfTestCase {
+
+    public static final String TAG = "Test33_StorageTuningProfiles";
+    private static final String _propertyValue = "1";
+
+    private static final StorageTuningProfile[] PROFILES = new StorageTuningProfile[] {
+            StorageTuningProfile.DEFAULT,
+            StorageTuningProfile.BULK_LOAD,
+            StorageTuningProfile.READ_MOSTLY,
+            StorageTuningProfile.LOW_MEMORY
+    };
+
+    public double runOne(final int numberOfDocuments, final int sizeOfDocuments) throws Exception {
+        final StringBuffer bigObj = new StringBuffer(sizeOfDocuments);
+        for (int i = 0; i < sizeOfDocuments; i++) {
+            bigObj.append(_propertyValue);
+        }
+
+        double defaultTotal = 0;
+        for (StorageTuningProfile profile : PROFILES) {
+            double total = runProfile(profile, numberOfDocuments, bigObj.toString());
+            if (profile == StorageTuningProfile.DEFAULT) {
+                defaultTotal = total;
+            }
+        }
+        return defaultTotal;
+    }
+
+    private double runProfile(StorageTuningProfile profile, final int numberOfDocuments, final String name) throws CouchbaseLiteException {
+        final AndroidStorageEngineOptions options = new AndroidStorageEngineOptions();
+        options.setTuningProfile(profile);
+        LiteTestContext context = new LiteTestContext("test-profile-" + profile.getName()) {
+            @Override
+            public SQLiteStorageEngineFactory getSQLiteStorageEngineFactory() {
+                return new AndroidSQLiteStorageEngineFactory(options);
+            }
+        };
+        Manager profileManager = new Manager(context, Manager.DEFAULT_OPTIONS);
+        try {
+            final Database profileDatabase = profileManager.getDatabase("cblite-test-profile");
+
+            long startMillis = System.currentTimeMillis();
+            boolean success = profileDatabase.runInTransaction(new TransactionalTask() {
+                public boolean run() {
+                    for (int i = 0; i < numberOfDocuments; i++) {
+                        Map<String,Object> props = new HashMap<String,Object>();
+                        props.put("name", name);
+                        props.put("apt", i);
+                        Document doc = profileDatabase.createDocument();
+                        try {
+                            doc.putProperties(props);
+                        } catch (CouchbaseLiteException cblex) {
+                            Log.v("PerformanceStats",TAG+", Failed to create doc "+props,cblex);
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            });
+            assertTrue(success);
+            long createMillis = System.currentTimeMillis() - startMillis;
+
+            startMillis = System.currentTimeMillis();
+            View view = profileDatabase.getView("apt");
+            view.setMap(new Mapper() {
+                public void map(Map<String, Object> document, Emitter emitter) {
+                    emitter.emit(document.get("apt"), null);
+                }
+            }, "1");
+            Query query = view.createQuery();
+            QueryEnumerator rowEnum = query.run();
+            while (rowEnum.hasNext()) {
+                rowEnum.next();
+            }
+            long queryMillis = System.currentTimeMillis() - startMillis;
+
+            startMillis = System.currentTimeMillis();
+            profileDatabase.compact();
+            long compactMillis = System.currentTimeMillis() - startMillis;
+
+            double total = createMillis + queryMillis + compactMillis;
+            Log.v("PerformanceStats",TAG+", "+profile.getName()+": create "+createMillis+" ms, query "+queryMillis+
+                    " ms, compact "+compactMillis+" ms, total "+total+" ms,"+numberOfDocuments+","+name.length());
+            return total;
+        } finally {
+            profileManager.close();
+        }
+    }
+}
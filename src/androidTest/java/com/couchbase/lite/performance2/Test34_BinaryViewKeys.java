@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.performance2;
+
+import com.couchbase.lite.LitePerfTestCase;
+import com.couchbase.lite.LiteTestContext;
+import com.couchbase.lite.android.AndroidSQLiteStatement;
+import com.couchbase.lite.android.AndroidSQLiteStorageEngine;
+import com.couchbase.lite.util.Log;
+import com.couchbase.touchdb.JSONCollationKey;
+
+import java.io.File;
+
+/**
+ * Compares range queries over an index of JSON keys sorted by the native JSON collator with
+ * the same queries over JSONCollationKey binary keys sorted by SQLite's BINARY collation.
+ */
+public class Test34_BinaryViewKeys extends LitePerfTestCase {
+
+    public static final String TAG = "Test34_BinaryViewKeys";
+
+    private static final int NUMBER_OF_RANGES = 100;
+
+    public double runOne(final int numberOfDocuments, final int sizeOfDocuments) throws Exception {
+        File dir = new LiteTestContext("test-binary-keys").getFilesDir();
+        AndroidSQLiteStorageEngine engine = new AndroidSQLiteStorageEngine();
+        assertTrue(engine.open(new File(dir, "keys.sqlite3").getAbsolutePath()));
+        try {
+            engine.execSQL("CREATE TABLE maps_json (key TEXT NOT NULL COLLATE JSON)");
+            engine.execSQL("CREATE INDEX maps_json_keys ON maps_json(key)");
+            engine.execSQL("CREATE TABLE maps_binary (key BLOB NOT NULL)");
+            engine.execSQL("CREATE INDEX maps_binary_keys ON maps_binary(key)");
+
+            StringBuilder name = new StringBuilder(sizeOfDocuments);
+            for (int i = 0; i < sizeOfDocuments; i++) {
+                name.append('n');
+            }
+
+            engine.beginTransaction();
+            AndroidSQLiteStatement insertJson = engine.compileStatement("INSERT INTO maps_json (key) VALUES (?)");
+            AndroidSQLiteStatement insertBinary = engine.compileStatement("INSERT INTO maps_binary (key) VALUES (?)");
+            try {
+                for (int i = 0; i < numberOfDocuments; i++) {
+                    String key = "[\"user\"," + (i % NUMBER_OF_RANGES) + ",\"" + name + i + "\"]";
+                    insertJson.bindString(1, key);
+                    insertJson.executeInsert();
+                    insertBinary.bindBlob(1, JSONCollationKey.fromJSON(key, JSONCollationKey.MODE_UNICODE));
+                    insertBinary.executeInsert();
+                }
+                engine.setTransactionSuccessful();
+            } finally {
+                insertJson.close();
+                insertBinary.close();
+                engine.endTransaction();
+            }
+
+            long jsonNanos = 0;
+            long binaryNanos = 0;
+            AndroidSQLiteStatement countJson = engine.compileStatement("SELECT count(*) FROM maps_json WHERE key >= ? AND key <= ?");
+            AndroidSQLiteStatement countBinary = engine.compileStatement("SELECT count(*) FROM maps_binary WHERE key >= ? AND key <= ?");
+            try {
+                for (int range = 0; range < NUMBER_OF_RANGES; range++) {
+                    String startKey = "[\"user\"," + range + "]";
+                    String endKey = "[\"user\"," + range + ",{}]";
+
+                    long start = System.nanoTime();
+                    countJson.bindString(1, startKey);
+                    countJson.bindString(2, endKey);
+                    long jsonCount = countJson.simpleQueryForLong();
+                    jsonNanos += System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    countBinary.bindBlob(1, JSONCollationKey.fromJSON(startKey, JSONCollationKey.MODE_UNICODE));
+                    countBinary.bindBlob(2, JSONCollationKey.fromJSON(endKey, JSONCollationKey.MODE_UNICODE));
+                    long binaryCount = countBinary.simpleQueryForLong();
+                    binaryNanos += System.nanoTime() - start;
+
+                    assertEquals(jsonCount, binaryCount);
+                }
+            } finally {
+                countJson.close();
+                countBinary.close();
+            }
+
+            double binaryMillis = binaryNanos / 1000000.0;
+            Log.v("PerformanceStats",TAG+", JSON collator: "+jsonNanos / 1000000+" ms, binary keys: "+
+                    binaryNanos / 1000000+" ms for "+NUMBER_OF_RANGES+" range queries,"+numberOfDocuments+","+sizeOfDocuments);
+            return binaryMillis;
+        } finally {
+            engine.close();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.performance2;
+
+import com.couchbase.lite.LitePerfTestCase;
+import com.couchbase.lite.LiteTestContext;
+import com.couchbase.lite.android.AndroidSQLiteStatement;
+import com.couchbase.lite.android.AndroidSQLiteStorageEngine;
+import com.couchbase.lite.storage.Cursor;
+import com.couchbase.lite.util.Log;
+import com.couchbase.touchdb.RevCollator;
+
+import java.io.File;
+
+/**
+ * Deep revision histories, as built by Test08_DocRevisions, stored with a REVID collated text
+ * column and with (generation, digest) columns. Measures migrating from the first layout to the
+ * second, and looking up the winning revision of every document in each layout.
+ */
+public class Test35_RevIdColumns extends LitePerfTestCase {
+
+    public static final String TAG = "Test35_RevIdColumns";
+
+    public double runOne(final int numberOfDocuments, final int sizeOfDocuments) throws Exception {
+        // sizeOfDocuments is used as the depth of each revision history
+        final int revisionsPerDocument = sizeOfDocuments;
+
+        File dir = new LiteTestContext("test-revid-columns").getFilesDir();
+        AndroidSQLiteStorageEngine engine = new AndroidSQLiteStorageEngine();
+        assertTrue(engine.open(new File(dir, "revs.sqlite3").getAbsolutePath()));
+        try {
+            engine.execSQL("CREATE TABLE revs_text (doc_id INTEGER NOT NULL, revid TEXT NOT NULL COLLATE REVID)");
+            engine.execSQL("CREATE INDEX revs_text_by_id ON revs_text(doc_id, revid)");
+            engine.execSQL("CREATE TABLE revs_columns (doc_id INTEGER NOT NULL, generation INTEGER NOT NULL, digest BLOB NOT NULL)");
+            engine.execSQL("CREATE INDEX revs_columns_by_id ON revs_columns(doc_id, generation, digest)");
+
+            engine.beginTransaction();
+            AndroidSQLiteStatement insertText = engine.compileStatement("INSERT INTO revs_text (doc_id, revid) VALUES (?, ?)");
+            try {
+                for (int doc = 0; doc < numberOfDocuments; doc++) {
+                    for (int generation = 1; generation <= revisionsPerDocument; generation++) {
+                        insertText.bindLong(1, doc);
+                        insertText.bindString(2, generation + "-" + Integer.toHexString((doc * 31 + generation) * 0x9e3779b1));
+                        insertText.executeInsert();
+                    }
+                }
+                engine.setTransactionSuccessful();
+            } finally {
+                insertText.close();
+                engine.endTransaction();
+            }
+
+            long start = System.nanoTime();
+            engine.beginTransaction();
+            AndroidSQLiteStatement insertColumns = engine.compileStatement("INSERT INTO revs_columns (doc_id, generation, digest) VALUES (?, ?, ?)");
+            Cursor cursor = engine.rawQuery("SELECT doc_id, revid FROM revs_text", null);
+            try {
+                while (cursor.moveToNext()) {
+                    String revId = cursor.getString(1);
+                    insertColumns.bindLong(1, cursor.getLong(0));
+                    insertColumns.bindLong(2, RevCollator.getGeneration(revId));
+                    insertColumns.bindBlob(3, RevCollator.getDigest(revId));
+                    insertColumns.executeInsert();
+                }
+                engine.setTransactionSuccessful();
+            } finally {
+                cursor.close();
+                insertColumns.close();
+                engine.endTransaction();
+            }
+            long migrateNanos = System.nanoTime() - start;
+
+            long textNanos = 0;
+            long columnsNanos = 0;
+            AndroidSQLiteStatement winnerText = engine.compileStatement(
+                    "SELECT revid FROM revs_text WHERE doc_id=? ORDER BY revid DESC LIMIT 1");
+            AndroidSQLiteStatement winnerColumns = engine.compileStatement(
+                    "SELECT generation FROM revs_columns WHERE doc_id=? ORDER BY generation DESC, digest DESC LIMIT 1");
+            try {
+                for (int doc = 0; doc < numberOfDocuments; doc++) {
+                    start = System.nanoTime();
+                    winnerText.bindLong(1, doc);
+                    String textWinner = winnerText.simpleQueryForString();
+                    textNanos += System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    winnerColumns.bindLong(1, doc);
+                    long columnsWinner = winnerColumns.simpleQueryForLong();
+                    columnsNanos += System.nanoTime() - start;
+
+                    assertEquals(RevCollator.getGeneration(textWinner), columnsWinner);
+                }
+            } finally {
+                winnerText.close();
+                winnerColumns.close();
+            }
+
+            double columnsMillis = columnsNanos / 1000000.0;
+            Log.v("PerformanceStats",TAG+", migrate "+migrateNanos / 1000000+" ms, winning revs with REVID: "+
+                    textNanos / 1000000+" ms, with columns: "+columnsNanos / 1000000+" ms,"+numberOfDocuments+","+sizeOfDocuments);
+            return columnsMillis;
+        } finally {
+            engine.close();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.performance2;
+
+import com.couchbase.lite.LitePerfTestCase;
+import com.couchbase.lite.util.Log;
+import com.couchbase.touchdb.RevCollator;
+import com.couchbase.touchdb.TDCollateJSON;
+
+import java.text.Collator;
+import java.util.Arrays;
+
+/**
+ * Throughput of TDCollateJSON and RevCollator for different key shapes. Each shape is compared
+ * numberOfDocuments times and the per-comparison time of every batch is reported as
+ * percentiles. sizeOfDocuments is the length of the strings in the long key shape, as in
+ * Test28_KeySizes.
+ *
+ * The distinct shapes never compare the same string twice, which is the worst case for the
+ * collation key cache behind Unicode comparisons. Those strings are also compared directly with
+ * Collator.compare() and with fresh CollationKeys, the two paths the cache chooses between.
+ */
+public class Test36_Collation extends LitePerfTestCase {
+
+    public static final String TAG = "Test36_Collation";
+
+    private static final int UNICODE = 0;
+    private static final int BATCH_SIZE = 100;
+
+    private interface Comparison {
+        int compare(int i);
+    }
+
+    public double runOne(final int numberOfDocuments, final int sizeOfDocuments) throws Exception {
+        final String[] ascii = new String[BATCH_SIZE];
+        final String[] unicode = new String[BATCH_SIZE];
+        final String[] numbers = new String[BATCH_SIZE];
+        final String[] nested = new String[BATCH_SIZE];
+        final String[] longKeys = new String[BATCH_SIZE];
+        final String[] revIds = new String[BATCH_SIZE];
+        final String[] distinct = new String[2 * Math.max(numberOfDocuments, BATCH_SIZE)];
+        final String[] distinctJSON = new String[distinct.length];
+        char[] filler = new char[sizeOfDocuments];
+        Arrays.fill(filler, 'k');
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            ascii[i] = "\"user" + (i * 7919 % BATCH_SIZE) + "\"";
+            unicode[i] = "\"\u043f\u043e\u043b\u044c\u0437\u043e\u0432\u0430\u0442\u0435\u043b\u044c " + (i * 7919 % BATCH_SIZE) + "\"";
+            numbers[i] = Double.toString((i * 7919 % BATCH_SIZE) * 1.5);
+            nested[i] = "[\"user\",[" + (i % 10) + ",[\"a\",\"b" + i + "\"]],{\"k\":" + i + "}]";
+            longKeys[i] = "\"" + new String(filler) + i + "\"";
+            revIds[i] = (i % 20 + 1) + "-" + Integer.toHexString(i * 0x9e3779b1);
+        }
+        for (int i = 0; i < distinct.length; i++) {
+            distinct[i] = "\u043f\u043e\u043b\u044c\u0437\u043e\u0432\u0430\u0442\u0435\u043b\u044c " + (i * 7919L % distinct.length);
+            distinctJSON[i] = "\"" + distinct[i] + "\"";
+        }
+        final Collator collator = Collator.getInstance();
+
+        double total = 0;
+        total += measure("ASCII strings", numberOfDocuments, jsonComparison(ascii));
+        total += measure("Unicode strings", numberOfDocuments, jsonComparison(unicode));
+        total += measure("numbers", numberOfDocuments, jsonComparison(numbers));
+        total += measure("nested arrays", numberOfDocuments, jsonComparison(nested));
+        total += measure("long keys", numberOfDocuments, jsonComparison(longKeys));
+        total += measure("distinct Unicode strings", numberOfDocuments, new Comparison() {
+            @Override
+            public int compare(int i) {
+                return TDCollateJSON.testCollateJSONWrapper(UNICODE, distinctJSON[2 * i], distinctJSON[2 * i + 1]);
+            }
+        });
+        total += measure("distinct, Collator.compare", numberOfDocuments, new Comparison() {
+            @Override
+            public int compare(int i) {
+                return collator.compare(distinct[2 * i], distinct[2 * i + 1]);
+            }
+        });
+        total += measure("distinct, CollationKey", numberOfDocuments, new Comparison() {
+            @Override
+            public int compare(int i) {
+                return collator.getCollationKey(distinct[2 * i]).compareTo(collator.getCollationKey(distinct[2 * i + 1]));
+            }
+        });
+        total += measure("rev IDs", numberOfDocuments, new Comparison() {
+            @Override
+            public int compare(int i) {
+                return RevCollator.testCollateRevIds(revIds[i % BATCH_SIZE], revIds[(i + 1) % BATCH_SIZE]);
+            }
+        });
+        return total;
+    }
+
+    private static Comparison jsonComparison(final String[] keys) {
+        return new Comparison() {
+            @Override
+            public int compare(int i) {
+                return TDCollateJSON.testCollateJSONWrapper(UNICODE, keys[i % BATCH_SIZE], keys[(i + 1) % BATCH_SIZE]);
+            }
+        };
+    }
+
+    /**
+     * Runs the comparison in batches, logs the percentiles of the time per comparison and
+     * returns the total time in milliseconds.
+     */
+    private double measure(String shape, int numberOfComparisons, Comparison comparison) {
+        int batches = Math.max(1, numberOfComparisons / BATCH_SIZE);
+        long[] nanosPerComparison = new long[batches];
+        long totalNanos = 0;
+        int i = 0;
+        for (int batch = 0; batch < batches; batch++) {
+            long start = System.nanoTime();
+            for (int j = 0; j < BATCH_SIZE; j++) {
+                comparison.compare(i++);
+            }
+            long elapsed = System.nanoTime() - start;
+            totalNanos += elapsed;
+            nanosPerComparison[batch] = elapsed / BATCH_SIZE;
+        }
+        Arrays.sort(nanosPerComparison);
+        Log.v("PerformanceStats",TAG+", "+shape+": p50 "+percentile(nanosPerComparison, 50)+" ns, p90 "+
+                percentile(nanosPerComparison, 90)+" ns, p99 "+percentile(nanosPerComparison, 99)+" ns, max "+
+                nanosPerComparison[batches - 1]+" ns,"+numberOfComparisons);
+        return totalNanos / 1000000.0;
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(sorted.length * percentile / 100.0) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.performance2;
+
+import com.couchbase.lite.Database;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.LitePerfTestCase;
+import com.couchbase.lite.LiteTestContext;
+import com.couchbase.lite.Manager;
+import com.couchbase.lite.TransactionalTask;
+import com.couchbase.lite.android.AndroidSQLiteStorageEngineFactory;
+import com.couchbase.lite.android.AndroidStorageEngineOptions;
+import com.couchbase.lite.android.OpenTimings;
+import com.couchbase.lite.android.StorageEngineStats;
+import com.couchbase.lite.storage.SQLiteStorageEngineFactory;
+import com.couchbase.lite.util.Log;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Like Test09_LoadDB, but reopens the same database file twice and logs the phase timings of
+ * both opens. The second one tells how much an open of a file still in the OS page cache costs.
+ */
+public class Test37_OpenPhases extends LitePerfTestCase {
+
+    public static final String TAG = "Test37_OpenPhases";
+
+    private static final String _propertyValue = "1";
+
+    public double runOne(final int numberOfDocuments, int sizeOfDocuments) throws Exception {
+        String[] bigObj = new String[sizeOfDocuments];
+        for (int i = 0; i < sizeOfDocuments; i++) {
+            bigObj[i] = _propertyValue;
+        }
+        final Map<String, Object> props = new HashMap<String, Object>();
+        props.put("bigArray", bigObj);
+
+        final StorageEngineStats stats = new StorageEngineStats();
+        final AndroidStorageEngineOptions options = new AndroidStorageEngineOptions();
+        options.setStats(stats);
+
+        Manager openManager = new Manager(new OpenPhasesContext(options, true), Manager.DEFAULT_OPTIONS);
+        final Database openDatabase = openManager.getDatabase("cblite-test-open");
+        assertTrue(openDatabase.runInTransaction(new TransactionalTask() {
+            public boolean run() {
+                for (int i = 0; i < numberOfDocuments; i++) {
+                    try {
+                        Document document = openDatabase.createDocument();
+                        document.putProperties(props);
+                    } catch (Throwable t) {
+                        Log.v("PerformanceStats",TAG+", Document create failed", t);
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }));
+        openManager.close();
+
+        stats.reset();
+        double firstMillis = timeOpen(options);
+        double secondMillis = timeOpen(options);
+        Log.v("PerformanceStats",TAG+", first open "+firstMillis+" ms, second open "+secondMillis+" ms,"+numberOfDocuments+","+sizeOfDocuments);
+
+        List<OpenTimings> timings = stats.getOpenTimings();
+        for (OpenTimings openTimings : timings) {
+            Log.v("PerformanceStats",TAG+", "+openTimings+","+numberOfDocuments+","+sizeOfDocuments);
+        }
+        return secondMillis;
+    }
+
+    private double timeOpen(AndroidStorageEngineOptions options) throws Exception {
+        long startMillis = System.currentTimeMillis();
+        Manager openManager = new Manager(new OpenPhasesContext(options, false), Manager.DEFAULT_OPTIONS);
+        openManager.getDatabase("cblite-test-open");
+        double executionTime = System.currentTimeMillis() - startMillis;
+        openManager.close();
+        return executionTime;
+    }
+
+    private static class OpenPhasesContext extends LiteTestContext {
+        private final AndroidStorageEngineOptions options;
+
+        OpenPhasesContext(AndroidStorageEngineOptions options, boolean deleteSubdirectory) {
+            super("test-open", deleteSubdirectory);
+            this.options = options;
+        }
+
+        @Override
+        public SQLiteStorageEngineFactory getSQLiteStorageEngineFactory() {
+            return new AndroidSQLiteStorageEngineFactory(options);
+        }
+    }
+}
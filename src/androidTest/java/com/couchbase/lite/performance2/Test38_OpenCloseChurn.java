@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.performance2;
+
+import com.couchbase.lite.Database;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.LitePerfTestCase;
+import com.couchbase.lite.LiteTestContext;
+import com.couchbase.lite.Manager;
+import com.couchbase.lite.android.AndroidSQLiteStorageEngine;
+import com.couchbase.lite.android.AndroidSQLiteStorageEngineFactory;
+import com.couchbase.lite.android.AndroidStorageEngineOptions;
+import com.couchbase.lite.storage.SQLiteStorageEngineFactory;
+import com.couchbase.lite.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Opens and closes the same database numberOfDocuments times with Manager.getDatabase() and
+ * Database.close(), reading one document each time, without and with the handle pool.
+ * sizeOfDocuments is the size of that document.
+ */
+public class Test38_OpenCloseChurn extends LitePerfTestCase {
+
+    public static final String TAG = "Test38_OpenCloseChurn";
+
+    public double runOne(final int numberOfDocuments, final int sizeOfDocuments) throws Exception {
+        StringBuilder value = new StringBuilder(sizeOfDocuments);
+        for (int i = 0; i < sizeOfDocuments; i++) {
+            value.append('1');
+        }
+
+        AndroidStorageEngineOptions defaultOptions = new AndroidStorageEngineOptions();
+        double defaultMillis = churn(defaultOptions, numberOfDocuments, value.toString());
+
+        AndroidStorageEngineOptions pooledOptions = new AndroidStorageEngineOptions();
+        pooledOptions.setHandlePoolIdleMillis(10 * 1000);
+        double pooledMillis;
+        try {
+            pooledMillis = churn(pooledOptions, numberOfDocuments, value.toString());
+        } finally {
+            AndroidSQLiteStorageEngine.closePooledHandles();
+        }
+
+        Log.v("PerformanceStats",TAG+", without pool "+defaultMillis+" ms, with pool "+pooledMillis+" ms,"+
+                numberOfDocuments+","+sizeOfDocuments);
+        return pooledMillis;
+    }
+
+    private double churn(final AndroidStorageEngineOptions options, int cycles, String value) throws Exception {
+        LiteTestContext context = new LiteTestContext("test-churn") {
+            @Override
+            public SQLiteStorageEngineFactory getSQLiteStorageEngineFactory() {
+                return new AndroidSQLiteStorageEngineFactory(options);
+            }
+        };
+        Manager churnManager = new Manager(context, Manager.DEFAULT_OPTIONS);
+        try {
+            Database churnDatabase = churnManager.getDatabase("cblite-test-churn");
+            Map<String, Object> props = new HashMap<String, Object>();
+            props.put("value", value);
+            Document document = churnDatabase.getDocument("churn");
+            document.putProperties(props);
+            churnDatabase.close();
+
+            long startMillis = System.currentTimeMillis();
+            for (int i = 0; i < cycles; i++) {
+                churnDatabase = churnManager.getDatabase("cblite-test-churn");
+                assertNotNull(churnDatabase.getExistingDocument("churn"));
+                churnDatabase.close();
+            }
+            return System.currentTimeMillis() - startMillis;
+        } finally {
+            churnManager.close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.performance2;
+
+import com.couchbase.lite.LitePerfTestCase;
+import com.couchbase.lite.util.AsyncLogger;
+import com.couchbase.lite.util.Log;
+import com.couchbase.lite.util.Logger;
+import com.couchbase.lite.util.SimpleLogger;
+
+/**
+ * Makes numberOfDocuments Log.v() calls with a message of sizeOfDocuments characters: with the
+ * tag disabled, guarded by Log.isLoggingEnabled(), enabled but below the SimpleLogger level, and
+ * enabled through an AsyncLogger. Returns the time taken by the disabled calls.
+ */
+public class Test39_LoggingOverhead extends LitePerfTestCase {
+
+    public static final String TAG = "Test39_LoggingOverhead";
+
+    public double runOne(final int numberOfDocuments, final int sizeOfDocuments) throws Exception {
+        StringBuilder value = new StringBuilder(sizeOfDocuments);
+        for (int i = 0; i < sizeOfDocuments; i++) {
+            value.append('1');
+        }
+        String arg = value.toString();
+
+        Logger previousLogger = Log.getLogger();
+        try {
+            Log.enableLogging(TAG, Log.WARN);
+            long disabledNanos = System.nanoTime();
+            for (int i = 0; i < numberOfDocuments; i++) {
+                Log.v(TAG, "%s: %s", this, arg);
+            }
+            disabledNanos = System.nanoTime() - disabledNanos;
+
+            long guardedNanos = System.nanoTime();
+            for (int i = 0; i < numberOfDocuments; i++) {
+                if (Log.isLoggingEnabled(TAG, Log.VERBOSE)) {
+                    Log.v(TAG, "%s: %s", this, arg);
+                }
+            }
+            guardedNanos = System.nanoTime() - guardedNanos;
+
+            Log.enableLogging(TAG, Log.VERBOSE);
+            SimpleLogger simpleLogger = new SimpleLogger();
+            simpleLogger.setLevel(android.util.Log.WARN);
+            Log.setLogger(simpleLogger);
+            long gatedNanos = System.nanoTime();
+            for (int i = 0; i < numberOfDocuments; i++) {
+                Log.v(TAG, "%s: %s", this, arg);
+            }
+            gatedNanos = System.nanoTime() - gatedNanos;
+
+            AsyncLogger asyncLogger = new AsyncLogger(new SimpleLogger());
+            Log.setLogger(asyncLogger);
+            long asyncNanos = System.nanoTime();
+            for (int i = 0; i < numberOfDocuments; i++) {
+                Log.v(TAG, "%s: %s", this, arg);
+            }
+            asyncNanos = System.nanoTime() - asyncNanos;
+            asyncLogger.close();
+
+            Log.v("PerformanceStats",TAG+", ns per call: disabled "+disabledNanos/numberOfDocuments+
+                    ", guarded "+guardedNanos/numberOfDocuments+
+                    ", below SimpleLogger level "+gatedNanos/numberOfDocuments+
+                    ", async "+asyncNanos/numberOfDocuments+" ("+asyncLogger.getDroppedCount()+" dropped),"+
+                    numberOfDocuments+","+sizeOfDocuments);
+            return disabledNanos / 1000000.0;
+        } finally {
+            Log.setLogger(previousLogger);
+            Log.enableLogging(TAG, Log.WARN);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.performance2;
+
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.Emitter;
+import com.couchbase.lite.LitePerfTestCase;
+import com.couchbase.lite.Mapper;
+import com.couchbase.lite.TransactionalTask;
+import com.couchbase.lite.View;
+import com.couchbase.lite.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Like Test12_IndexView, but indexes 1, 2 and 4 views over the same documents and logs the time
+ * per view for each, to show how indexing time grows with the number of views. Returns the time
+ * taken to index 4 views.
+ */
+public class Test40_IndexViews extends LitePerfTestCase {
+
+    public static final String TAG = "Test40_IndexViews";
+
+    private static final String _propertyValue = "1";
+    private static final String[] KEYS = {"name", "apt", "phone", "vacant"};
+    private static final int[] VIEW_COUNTS = {1, 2, 4};
+
+    public double runOne(final int numberOfDocuments, final int sizeOfDocuments) throws Exception {
+        final StringBuffer bigObj = new StringBuffer(sizeOfDocuments);
+        for (int i = 0; i < sizeOfDocuments; i++) {
+            bigObj.append(_propertyValue);
+        }
+
+        boolean success = database.runInTransaction(new TransactionalTask() {
+
+            public boolean run() {
+                for (int i = 0; i < numberOfDocuments; i++) {
+                    Map<String,Object> props = new HashMap<String,Object>();
+                    props.put("name",bigObj.toString());
+                    props.put("apt",i);
+                    props.put("phone",408100000 + i);
+                    props.put("vacant",(i % 2) == 0);
+
+                    Document doc = database.createDocument();
+                    try {
+                        doc.putProperties(props);
+                    } catch (CouchbaseLiteException cblex) {
+                        Log.v("PerformanceStats",TAG+", Failed to create doc "+props,cblex);
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+        assertTrue(success);
+
+        double executionTime = 0;
+        for (int viewCount : VIEW_COUNTS) {
+            View[] views = new View[viewCount];
+            for (int i = 0; i < viewCount; i++) {
+                final String key = KEYS[i % KEYS.length];
+                views[i] = database.getView("by-" + key + "-" + viewCount);
+                views[i].setMap(new Mapper() {
+                    public void map(Map<String, Object> document, Emitter emitter) {
+                        Object value = document.get(key);
+                        if (value != null) {
+                            emitter.emit(value, null);
+                        }
+                    }
+                }, "1");
+            }
+
+            long startMillis = System.currentTimeMillis();
+            for (View view : views) {
+                view.updateIndex();
+            }
+            executionTime = System.currentTimeMillis() - startMillis;
+            Log.v("PerformanceStats",TAG+", "+viewCount+" views, "+executionTime+" ms, "+
+                    (executionTime / viewCount)+" ms per view,"+numberOfDocuments+","+sizeOfDocuments);
+        }
+        return executionTime;
+    }
+}
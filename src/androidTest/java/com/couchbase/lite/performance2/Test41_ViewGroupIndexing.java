@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.performance2;
+
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.Emitter;
+import com.couchbase.lite.LitePerfTestCase;
+import com.couchbase.lite.Mapper;
+import com.couchbase.lite.TransactionalTask;
+import com.couchbase.lite.View;
+import com.couchbase.lite.util.Log;
+import com.couchbase.lite.util.ViewGroupMapper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Indexes the same four map functions over the same documents twice: as four views, and as one
+ * view with a ViewGroupMapper, which parses each document once. Returns the time taken by the
+ * group.
+ */
+public class Test41_ViewGroupIndexing extends LitePerfTestCase {
+
+    public static final String TAG = "Test41_ViewGroupIndexing";
+
+    private static final String _propertyValue = "1";
+    private static final String[] KEYS = {"name", "apt", "phone", "vacant"};
+
+    public double runOne(final int numberOfDocuments, final int sizeOfDocuments) throws Exception {
+        final StringBuffer bigObj = new StringBuffer(sizeOfDocuments);
+        for (int i = 0; i < sizeOfDocuments; i++) {
+            bigObj.append(_propertyValue);
+        }
+
+        boolean success = database.runInTransaction(new TransactionalTask() {
+
+            public boolean run() {
+                for (int i = 0; i < numberOfDocuments; i++) {
+                    Map<String,Object> props = new HashMap<String,Object>();
+                    props.put("name",bigObj.toString());
+                    props.put("apt",i);
+                    props.put("phone",408100000 + i);
+                    props.put("vacant",(i % 2) == 0);
+
+                    Document doc = database.createDocument();
+                    try {
+                        doc.putProperties(props);
+                    } catch (CouchbaseLiteException cblex) {
+                        Log.v("PerformanceStats",TAG+", Failed to create doc "+props,cblex);
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+        assertTrue(success);
+
+        View[] views = new View[KEYS.length];
+        ViewGroupMapper group = new ViewGroupMapper();
+        for (int i = 0; i < KEYS.length; i++) {
+            views[i] = database.getView("by-" + KEYS[i]);
+            views[i].setMap(keyMapper(KEYS[i]), "1");
+            group.add(keyMapper(KEYS[i]));
+        }
+        View groupView = database.getView("group");
+        groupView.setMap(group, "1");
+
+        long startMillis = System.currentTimeMillis();
+        for (View view : views) {
+            view.updateIndex();
+        }
+        double separateTime = System.currentTimeMillis() - startMillis;
+
+        startMillis = System.currentTimeMillis();
+        groupView.updateIndex();
+        double groupTime = System.currentTimeMillis() - startMillis;
+
+        Log.v("PerformanceStats",TAG+", "+KEYS.length+" views "+separateTime+" ms, group "+groupTime+" ms,"+
+                numberOfDocuments+","+sizeOfDocuments);
+        return groupTime;
+    }
+
+    private static Mapper keyMapper(final String key) {
+        return new Mapper() {
+            public void map(Map<String, Object> document, Emitter emitter) {
+                Object value = document.get(key);
+                if (value != null) {
+                    emitter.emit(value, null);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.performance2;
+
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.Emitter;
+import com.couchbase.lite.LitePerfTestCase;
+import com.couchbase.lite.Mapper;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.QueryEnumerator;
+import com.couchbase.lite.Reducer;
+import com.couchbase.lite.TransactionalTask;
+import com.couchbase.lite.View;
+import com.couchbase.lite.util.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Like Test14_ReduceView, but runs the same reduce query and a group query REPEAT_COUNT times
+ * each over an unchanged index, adds one document, and runs the reduce query once more. Returns
+ * the time taken by the repeated queries.
+ */
+public class Test42_RepeatedReduce extends LitePerfTestCase {
+
+    public static final String TAG = "Test42_RepeatedReduce";
+
+    private static final String _propertyValue = "1";
+    private static final int REPEAT_COUNT = 20;
+
+    public double runOne(final int numberOfDocuments, final int sizeOfDocuments) throws Exception {
+        final StringBuffer bigObj = new StringBuffer(sizeOfDocuments);
+        for (int i = 0; i < sizeOfDocuments; i++) {
+            bigObj.append(_propertyValue);
+        }
+
+        View view = database.getView("floors");
+        view.setMapReduce(
+                new Mapper() {
+                    public void map(Map<String, Object> document, Emitter emitter) {
+                        Number apt = (Number) document.get("apt");
+                        if (apt != null) {
+                            emitter.emit(Arrays.asList(apt.intValue() / 100, apt), document.get("rent"));
+                        }
+                    }
+                },
+                new Reducer() {
+                    public Object reduce(List<Object> keys, List<Object> values, boolean rereduce) {
+                        return View.totalValues(values);
+                    }
+                },
+                "1"
+        );
+
+        boolean success = database.runInTransaction(new TransactionalTask() {
+
+            public boolean run() {
+                for (int i = 0; i < numberOfDocuments; i++) {
+                    if (!putApartment(i, bigObj.toString())) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+        assertTrue(success);
+        view.updateIndex();
+
+        long startMillis = System.currentTimeMillis();
+        for (int i = 0; i < REPEAT_COUNT; i++) {
+            Query query = view.createQuery();
+            query.setMapOnly(false);
+            QueryEnumerator rows = query.run();
+            assertEquals(1, rows.getCount());
+        }
+        double reduceTime = System.currentTimeMillis() - startMillis;
+
+        startMillis = System.currentTimeMillis();
+        for (int i = 0; i < REPEAT_COUNT; i++) {
+            Query query = view.createQuery();
+            query.setMapOnly(false);
+            query.setGroupLevel(1);
+            query.run();
+        }
+        double groupTime = System.currentTimeMillis() - startMillis;
+
+        assertTrue(putApartment(numberOfDocuments, bigObj.toString()));
+        startMillis = System.currentTimeMillis();
+        Query query = view.createQuery();
+        query.setMapOnly(false);
+        query.run();
+        double updatedTime = System.currentTimeMillis() - startMillis;
+
+        Log.v("PerformanceStats",TAG+", reduce "+(reduceTime / REPEAT_COUNT)+" ms, group "+(groupTime / REPEAT_COUNT)+
+                " ms, reduce after one change "+updatedTime+" ms,"+numberOfDocuments+","+sizeOfDocuments);
+        return reduceTime + groupTime;
+    }
+
+    private boolean putApartment(int i, String name) {
+        Map<String,Object> props = new HashMap<String,Object>();
+        props.put("name",name);
+        props.put("apt",i);
+        props.put("rent",1000 + i % 500);
+
+        Document doc = database.createDocument();
+        try {
+            doc.putProperties(props);
+            return true;
+        } catch (CouchbaseLiteException cblex) {
+            Log.v("PerformanceStats",TAG+", Failed to create doc "+props,cblex);
+            return false;
+        }
+    }
+}
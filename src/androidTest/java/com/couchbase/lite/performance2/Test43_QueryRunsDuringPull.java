@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.performance2;
+
+import com.couchbase.lite.Database;
+import com.couchbase.lite.LitePerfTestCase;
+import com.couchbase.lite.LiteTestContext;
+import com.couchbase.lite.LiveQuery;
+import com.couchbase.lite.Manager;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.QueryEnumerator;
+import com.couchbase.lite.replicator.Replication;
+import com.couchbase.lite.util.Log;
+import com.couchbase.lite.util.RateLimitedQuery;
+
+import junit.framework.Assert;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts how many times a query over all documents runs while a pull replication brings in
+ * numberOfDocuments documents, first as a LiveQuery and then as a RateLimitedQuery, and logs
+ * both as executions per 10k pulled documents. For the LiveQuery this counts change
+ * notifications, so it is a lower bound on its runs. Returns the time the rate limited pull took.
+ */
+public class Test43_QueryRunsDuringPull extends LitePerfTestCase {
+
+    public static final String TAG = "Test43_QueryRunsDuringPull";
+
+    public double runOne(final int numberOfDocuments, final int sizeOfDocuments) throws Exception {
+        char[] array = new char[sizeOfDocuments];
+        Arrays.fill(array, '*');
+        String body = new String(array);
+        final Map<String, Object> props = new HashMap<String, Object>();
+        props.put("k", body);
+
+        String docIdTimestamp = Long.toString(System.currentTimeMillis());
+
+        for (int i = 0; i < numberOfDocuments; i++) {
+            String docId = String.format("doc%d-%s", i, docIdTimestamp);
+            try {
+                addDocWithId(docId, props, null, false);
+            } catch (IOException ioex) {
+                Log.v("PerformanceStats",TAG+", Add document failed", ioex);
+                fail();
+            }
+        }
+
+        URL remote = getReplicationURL();
+        final Replication replPush = database.createPushReplication(remote);
+        replPush.setContinuous(false);
+        if (!isSyncGateway(remote)) {
+            replPush.setCreateTarget(true);
+            Assert.assertTrue(replPush.shouldCreateTarget());
+        }
+        runReplication(replPush);
+
+        long startMillis = System.currentTimeMillis();
+        int liveQueryRuns = pull(remote, numberOfDocuments, false);
+        double liveQueryTime = System.currentTimeMillis() - startMillis;
+
+        startMillis = System.currentTimeMillis();
+        int rateLimitedRuns = pull(remote, numberOfDocuments, true);
+        double rateLimitedTime = System.currentTimeMillis() - startMillis;
+
+        Log.v("PerformanceStats",TAG+", query runs per 10k docs: LiveQuery "+(liveQueryRuns * 10000L / numberOfDocuments)+
+                " in "+liveQueryTime+" ms, RateLimitedQuery "+(rateLimitedRuns * 10000L / numberOfDocuments)+
+                " in "+rateLimitedTime+" ms,"+numberOfDocuments+","+sizeOfDocuments);
+        return rateLimitedTime;
+    }
+
+    /**
+     * Pulls into an empty database while a query over all documents is live, waits for the query
+     * to see every document and returns the number of times it ran.
+     */
+    private int pull(URL remote, final int numberOfDocuments, boolean rateLimited) throws Exception {
+        Manager pullManager = new Manager(new LiteTestContext("test-query-runs-" + rateLimited), Manager.DEFAULT_OPTIONS);
+        try {
+            Database pullDatabase = pullManager.getDatabase("cblite-test-pull");
+            Replication replPull = pullDatabase.createPullReplication(remote);
+            replPull.setContinuous(false);
+
+            final CountDownLatch allRowsSignal = new CountDownLatch(1);
+            final AtomicInteger runs = new AtomicInteger();
+            Query query = pullDatabase.createAllDocumentsQuery();
+            LiveQuery liveQuery = null;
+            RateLimitedQuery rateLimitedQuery = null;
+            if (rateLimited) {
+                rateLimitedQuery = new RateLimitedQuery(query);
+                rateLimitedQuery.pauseDuring(replPull);
+                rateLimitedQuery.addListener(new RateLimitedQuery.Listener() {
+                    @Override
+                    public void rowsChanged(QueryEnumerator rows) {
+                        if (rows.getCount() >= numberOfDocuments) {
+                            allRowsSignal.countDown();
+                        }
+                    }
+                });
+                rateLimitedQuery.start();
+            } else {
+                liveQuery = query.toLiveQuery();
+                liveQuery.addChangeListener(new LiveQuery.ChangeListener() {
+                    @Override
+                    public void changed(LiveQuery.ChangeEvent event) {
+                        runs.incrementAndGet();
+                        if (event.getRows() != null && event.getRows().getCount() >= numberOfDocuments) {
+                            allRowsSignal.countDown();
+                        }
+                    }
+                });
+                liveQuery.start();
+            }
+
+            replPull.start();
+            assertTrue(allRowsSignal.await(300, TimeUnit.SECONDS));
+
+            if (rateLimited) {
+                rateLimitedQuery.stop();
+                return (int) rateLimitedQuery.getRunCount();
+            }
+            liveQuery.stop();
+            return runs.get();
+        } finally {
+            pullManager.close();
+        }
+    }
+}
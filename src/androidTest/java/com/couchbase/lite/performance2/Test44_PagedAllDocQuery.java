@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.performance2;
+
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.LitePerfTestCase;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.QueryEnumerator;
+import com.couchbase.lite.QueryRow;
+import com.couchbase.lite.TransactionalTask;
+import com.couchbase.lite.util.Log;
+import com.couchbase.lite.util.PagedQueryEnumerator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Like Test29_AllDocQuery, but reads all the rows from a single QueryEnumerator and through a
+ * PagedQueryEnumerator, and logs the time taken and how much the heap grew while the rows were
+ * being read. Returns the time taken by the paged read.
+ */
+public class Test44_PagedAllDocQuery extends LitePerfTestCase {
+
+    public static final String TAG = "Test44_PagedAllDocQuery";
+
+    private static final String _propertyValue = "1";
+
+    public double runOne(final int numberOfDocuments, final int sizeOfDocuments) throws Exception {
+        final StringBuffer bigObj = new StringBuffer(sizeOfDocuments);
+        for (int i = 0; i < sizeOfDocuments; i++) {
+            bigObj.append(_propertyValue);
+        }
+
+        boolean success = database.runInTransaction(new TransactionalTask() {
+
+            public boolean run() {
+                for (int i = 0; i < numberOfDocuments; i++) {
+                    Map<String,Object> props = new HashMap<String,Object>();
+                    props.put("name",bigObj.toString());
+                    props.put("apt",i);
+
+                    Document doc = database.createDocument();
+                    try {
+                        doc.putProperties(props);
+                    } catch (CouchbaseLiteException cblex) {
+                        Log.v("PerformanceStats",TAG+", Failed to create doc "+props,cblex);
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+        assertTrue(success);
+
+        long heapBefore = usedHeap();
+        long startMillis = System.currentTimeMillis();
+        QueryEnumerator rowEnum = database.createAllDocumentsQuery().run();
+        int count = 0;
+        while (rowEnum.hasNext()) {
+            QueryRow row = rowEnum.next();
+            row.getValue();
+            count++;
+        }
+        double wholeTime = System.currentTimeMillis() - startMillis;
+        assertEquals(numberOfDocuments, count);
+        // every row is still held by rowEnum
+        long wholeHeap = usedHeap() - heapBefore;
+        rowEnum = null;
+
+        startMillis = System.currentTimeMillis();
+        count = 0;
+        for (QueryRow row : new PagedQueryEnumerator(database.createAllDocumentsQuery())) {
+            row.getValue();
+            count++;
+        }
+        double pagedTime = System.currentTimeMillis() - startMillis;
+        assertEquals(numberOfDocuments, count);
+
+        // a second, untimed pass to find the most the heap grows after any page
+        heapBefore = usedHeap();
+        long pagedHeap = 0;
+        count = 0;
+        Query query = database.createAllDocumentsQuery();
+        for (QueryRow row : new PagedQueryEnumerator(query)) {
+            row.getValue();
+            if (++count % PagedQueryEnumerator.DEFAULT_PAGE_SIZE == 0) {
+                pagedHeap = Math.max(pagedHeap, usedHeap() - heapBefore);
+            }
+        }
+
+        Log.v("PerformanceStats",TAG+", whole "+wholeTime+" ms, "+(wholeHeap / 1024)+" KB, paged "+pagedTime+" ms, "+
+                (pagedHeap / 1024)+" KB,"+numberOfDocuments+","+sizeOfDocuments);
+        return pagedTime;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.performance2;
+
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.LitePerfTestCase;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.QueryEnumerator;
+import com.couchbase.lite.QueryRow;
+import com.couchbase.lite.TransactionalTask;
+import com.couchbase.lite.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the properties of every document through createAllDocumentsQuery(), once loading each
+ * row's document on access and once with setPrefetch(true), reopening the database before each
+ * so that neither starts with a warm document cache. Returns the time taken with prefetch.
+ */
+public class Test45_AllDocsPrefetch extends LitePerfTestCase {
+
+    public static final String TAG = "Test45_AllDocsPrefetch";
+
+    private static final String _propertyValue = "1";
+
+    public double runOne(final int numberOfDocuments, final int sizeOfDocuments) throws Exception {
+        final StringBuffer bigObj = new StringBuffer(sizeOfDocuments);
+        for (int i = 0; i < sizeOfDocuments; i++) {
+            bigObj.append(_propertyValue);
+        }
+
+        boolean success = database.runInTransaction(new TransactionalTask() {
+
+            public boolean run() {
+                for (int i = 0; i < numberOfDocuments; i++) {
+                    Map<String,Object> props = new HashMap<String,Object>();
+                    props.put("name",bigObj.toString());
+                    props.put("apt",i);
+
+                    Document doc = database.createDocument();
+                    try {
+                        doc.putProperties(props);
+                    } catch (CouchbaseLiteException cblex) {
+                        Log.v("PerformanceStats",TAG+", Failed to create doc "+props,cblex);
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+        assertTrue(success);
+
+        double onAccessTime = readAll(numberOfDocuments, false);
+        double prefetchTime = readAll(numberOfDocuments, true);
+
+        Log.v("PerformanceStats",TAG+", on access "+onAccessTime+" ms, prefetch "+prefetchTime+" ms,"+
+                numberOfDocuments+","+sizeOfDocuments);
+        return prefetchTime;
+    }
+
+    private double readAll(int numberOfDocuments, boolean prefetch) throws Exception {
+        database.close();
+        database = manager.getDatabase(DEFAULT_TEST_DB);
+
+        long startMillis = System.currentTimeMillis();
+        Query query = database.createAllDocumentsQuery();
+        query.setPrefetch(prefetch);
+        QueryEnumerator rowEnum = query.run();
+        int count = 0;
+        while (rowEnum.hasNext()) {
+            QueryRow row = rowEnum.next();
+            assertNotNull(row.getDocument().getProperties().get("name"));
+            count++;
+        }
+        double executionTime = System.currentTimeMillis() - startMillis;
+        assertEquals(numberOfDocuments, count);
+        return executionTime;
+    }
+}
@@ -0,0 +1,100 @@
+package com.couchbase.lite.util;
+
+import com.couchbase.lite.Document;
+import com.couchbase.lite.Emitter;
+import com.couchbase.lite.LiteTestCase;
+import com.couchbase.lite.Mapper;
+import com.couchbase.lite.Predicate;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.QueryEnumerator;
+import com.couchbase.lite.QueryRow;
+import com.couchbase.lite.View;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PagedQueryEnumeratorTest extends LiteTestCase {
+
+    public static final String TAG = "PagedQueryEnumeratorTest";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        for (int i = 0; i < 25; i++) {
+            Map<String, Object> props = new HashMap<String, Object>();
+            props.put("floor", i / 10);
+            props.put("index", i);
+            Document document = database.createDocument();
+            document.putProperties(props);
+        }
+    }
+
+    private static List<String> docIds(Iterable<QueryRow> rows) {
+        List<String> ids = new ArrayList<String>();
+        for (QueryRow row : rows) {
+            ids.add(row.getSourceDocumentId());
+        }
+        return ids;
+    }
+
+    private static List<String> docIds(QueryEnumerator rows) {
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < rows.getCount(); i++) {
+            ids.add(rows.getRow(i).getSourceDocumentId());
+        }
+        return ids;
+    }
+
+    public void testAllDocs() throws Exception {
+        List<String> expected = docIds(database.createAllDocumentsQuery().run());
+        assertEquals(25, expected.size());
+        assertEquals(expected, docIds(new PagedQueryEnumerator(database.createAllDocumentsQuery(), 7)));
+
+        Query query = database.createAllDocumentsQuery();
+        query.setLimit(10);
+        assertEquals(expected.subList(0, 10), docIds(new PagedQueryEnumerator(query, 7)));
+    }
+
+    public void testRepeatedKeys() throws Exception {
+        View view = database.getView("floors");
+        view.setMap(new Mapper() {
+            @Override
+            public void map(Map<String, Object> document, Emitter emitter) {
+                // every document emits its floor twice
+                emitter.emit(document.get("floor"), null);
+                emitter.emit(document.get("floor"), null);
+            }
+        }, "1");
+
+        List<String> expected = docIds(view.createQuery().run());
+        assertEquals(50, expected.size());
+        for (int pageSize = 1; pageSize <= 4; pageSize++) {
+            assertEquals(expected, docIds(new PagedQueryEnumerator(view.createQuery(), pageSize)));
+        }
+
+        Query descending = view.createQuery();
+        descending.setDescending(true);
+        List<String> expectedDescending = docIds(descending.run());
+        descending = view.createQuery();
+        descending.setDescending(true);
+        assertEquals(expectedDescending, docIds(new PagedQueryEnumerator(descending, 3)));
+    }
+
+    public void testPostFilterIsRejected() throws Exception {
+        Query query = database.createAllDocumentsQuery();
+        query.setPostFilter(new Predicate<QueryRow>() {
+            @Override
+            public boolean apply(QueryRow row) {
+                return true;
+            }
+        });
+        try {
+            new PagedQueryEnumerator(query);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.couchbase.lite.util;
+
+import com.couchbase.lite.Document;
+import com.couchbase.lite.Emitter;
+import com.couchbase.lite.LiteTestCase;
+import com.couchbase.lite.Mapper;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.View;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class QueryResultCacheTest extends LiteTestCase {
+
+    public static final String TAG = "QueryResultCacheTest";
+
+    private View view;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        view = database.getView("apts");
+        view.setMap(new Mapper() {
+            @Override
+            public void map(Map<String, Object> document, Emitter emitter) {
+                emitter.emit(document.get("apt"), null);
+            }
+        }, "1");
+        for (int i = 0; i < 10; i++) {
+            putApartment(i);
+        }
+    }
+
+    private void putApartment(int apt) throws Exception {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("apt", apt);
+        Document document = database.createDocument();
+        document.putProperties(props);
+    }
+
+    private Query createQuery(int startKey) {
+        Query query = view.createQuery();
+        query.setStartKey(startKey);
+        return query;
+    }
+
+    public void testHitsAndMisses() throws Exception {
+        QueryResultCache cache = new QueryResultCache(view);
+        assertEquals(10, cache.run(createQuery(0)).getCount());
+        assertEquals(10, cache.run(createQuery(0)).getCount());
+        assertEquals(5, cache.run(createQuery(5)).getCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(15, cache.getCachedRowCount());
+    }
+
+    public void testAllDocsModeIsPartOfTheKey() throws Exception {
+        QueryResultCache cache = new QueryResultCache(view);
+        cache.run(createQuery(0));
+        Query query = createQuery(0);
+        query.setAllDocsMode(Query.AllDocsMode.INCLUDE_DELETED);
+        cache.run(query);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    public void testInvalidatedWhenIndexAdvances() throws Exception {
+        QueryResultCache cache = new QueryResultCache(view);
+        assertEquals(10, cache.run(createQuery(0)).getCount());
+        putApartment(10);
+        assertEquals(11, cache.run(createQuery(0)).getCount());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(11, cache.getCachedRowCount());
+    }
+
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        QueryResultCache cache = new QueryResultCache(view, 12);
+        cache.run(createQuery(0));
+        cache.run(createQuery(8));
+        assertEquals(12, cache.getCachedRowCount());
+
+        // 10 + 2 + 3 rows don't fit, so the result starting at 0 goes
+        cache.run(createQuery(8));
+        cache.run(createQuery(7));
+        assertEquals(5, cache.getCachedRowCount());
+        cache.run(createQuery(8));
+        assertEquals(2, cache.getHitCount());
+    }
+}
@@ -0,0 +1,60 @@
+package com.couchbase.lite.util;
+
+import com.couchbase.lite.Document;
+import com.couchbase.lite.Emitter;
+import com.couchbase.lite.LiteTestCase;
+import com.couchbase.lite.Mapper;
+import com.couchbase.lite.QueryEnumerator;
+import com.couchbase.lite.View;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class QueryRowDiffTest extends LiteTestCase {
+
+    public static final String TAG = "QueryRowDiffTest";
+
+    private Document putApartment(int apt, String name) throws Exception {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("apt", apt);
+        props.put("name", name);
+        Document document = database.createDocument();
+        document.putProperties(props);
+        return document;
+    }
+
+    public void testInsertedRemovedUpdated() throws Exception {
+        View view = database.getView("apts");
+        view.setMap(new Mapper() {
+            @Override
+            public void map(Map<String, Object> document, Emitter emitter) {
+                emitter.emit(document.get("apt"), document.get("name"));
+            }
+        }, "1");
+
+        Document first = putApartment(1, "one");
+        Document second = putApartment(2, "two");
+        Document third = putApartment(3, "three");
+        QueryEnumerator before = view.createQuery().run();
+
+        QueryRowDiff diff = QueryRowDiff.compute(null, before);
+        assertEquals(3, diff.getInserted().size());
+        assertTrue(QueryRowDiff.compute(before, view.createQuery().run()).isEmpty());
+
+        first.delete();
+        Map<String, Object> props = new HashMap<String, Object>(second.getProperties());
+        props.put("name", "deux");
+        second.putProperties(props);
+        putApartment(4, "four");
+        QueryEnumerator after = view.createQuery().run();
+
+        diff = QueryRowDiff.compute(before, after);
+        assertEquals(1, diff.getInserted().size());
+        assertEquals(4, diff.getInserted().get(0).getKey());
+        assertEquals(1, diff.getRemoved().size());
+        assertEquals(first.getId(), diff.getRemoved().get(0).getSourceDocumentId());
+        assertEquals(1, diff.getUpdated().size());
+        assertEquals("deux", diff.getUpdated().get(0).getValue());
+        assertEquals(third.getId(), after.getRow(1).getSourceDocumentId());
+    }
+}
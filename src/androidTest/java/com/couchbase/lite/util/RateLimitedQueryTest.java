@@ -0,0 +1,76 @@
+package com.couchbase.lite.util;
+
+import com.couchbase.lite.Document;
+import com.couchbase.lite.LiteTestCase;
+import com.couchbase.lite.QueryEnumerator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class RateLimitedQueryTest extends LiteTestCase {
+
+    public static final String TAG = "RateLimitedQueryTest";
+
+    public void testBurstIsCoalesced() throws Exception {
+        final CountDownLatch allRows = new CountDownLatch(1);
+        RateLimitedQuery query = new RateLimitedQuery(database.createAllDocumentsQuery(), 1000);
+        query.addListener(new RateLimitedQuery.Listener() {
+            @Override
+            public void rowsChanged(QueryEnumerator rows) {
+                if (rows.getCount() == 50) {
+                    allRows.countDown();
+                }
+            }
+        });
+        long startMillis = System.currentTimeMillis();
+        query.start();
+        try {
+            for (int i = 0; i < 50; i++) {
+                Map<String, Object> props = new HashMap<String, Object>();
+                props.put("i", i);
+                Document document = database.createDocument();
+                document.putProperties(props);
+            }
+            assertTrue(allRows.await(10, TimeUnit.SECONDS));
+            // the initial run, then at most one per second
+            long seconds = (System.currentTimeMillis() - startMillis) / 1000;
+            assertTrue(query.getRunCount() <= 2 + seconds);
+        } finally {
+            query.stop();
+        }
+    }
+
+    public void testRunsAfterTheLastChange() throws Exception {
+        final CountDownLatch firstRun = new CountDownLatch(1);
+        final CountDownLatch allRows = new CountDownLatch(1);
+        // far longer than the 100 ms between changes, so a slow device can't let a run slip in
+        RateLimitedQuery query = new RateLimitedQuery(database.createAllDocumentsQuery(), 3000);
+        query.addListener(new RateLimitedQuery.Listener() {
+            @Override
+            public void rowsChanged(QueryEnumerator rows) {
+                firstRun.countDown();
+                if (rows.getCount() == 10) {
+                    allRows.countDown();
+                }
+            }
+        });
+        query.start();
+        try {
+            assertTrue(firstRun.await(10, TimeUnit.SECONDS));
+            // changes closer together than the interval keep putting the run off
+            for (int i = 0; i < 10; i++) {
+                Map<String, Object> props = new HashMap<String, Object>();
+                props.put("i", i);
+                database.createDocument().putProperties(props);
+                Thread.sleep(100);
+            }
+            assertEquals(1, query.getRunCount());
+            assertTrue(allRows.await(30, TimeUnit.SECONDS));
+            assertEquals(2, query.getRunCount());
+        } finally {
+            query.stop();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.couchbase.lite.util;
+
+import com.couchbase.lite.LiteTestCase;
+import com.couchbase.lite.LiteTestContext;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+
+public class TraceTest extends LiteTestCase {
+
+    public static final String TAG = "TraceTest";
+
+    @Override
+    protected void tearDown() throws Exception {
+        Trace.disable();
+        super.tearDown();
+    }
+
+    public void testDisabled() throws Exception {
+        Trace.disable();
+        Trace.record(Trace.BATCH, 100, 5000);
+        assertEquals(0, Trace.size());
+        assertEquals(0, Trace.dump(new File(new LiteTestContext("trace-test").getFilesDir(), "trace.bin")));
+    }
+
+    public void testDumpAfterWrapping() throws Exception {
+        Trace.enable(4);
+        for (int i = 0; i < 6; i++) {
+            Trace.record(Trace.HTTP_REQUEST, 200 + i, i * 1000);
+        }
+        assertEquals(4, Trace.size());
+
+        File file = new File(new LiteTestContext("trace-test").getFilesDir(), "trace.bin");
+        assertEquals(4, Trace.dump(file));
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            byte[] magic = new byte[8];
+            in.readFully(magic);
+            assertEquals("CBLTRACE", new String(magic, "US-ASCII"));
+            assertEquals(Trace.FORMAT_VERSION, in.readInt());
+            assertEquals(4, in.readInt());
+
+            long previousTimestamp = Long.MIN_VALUE;
+            for (int i = 2; i < 6; i++) {
+                long timestamp = in.readLong();
+                assertTrue(timestamp >= previousTimestamp);
+                previousTimestamp = timestamp;
+                assertEquals(Trace.HTTP_REQUEST, in.readInt());
+                assertEquals((int) Thread.currentThread().getId(), in.readInt());
+                assertEquals(200 + i, in.readLong());
+                assertEquals(i * 1000, in.readLong());
+            }
+            assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+    }
+}
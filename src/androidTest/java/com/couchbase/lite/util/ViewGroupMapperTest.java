@@ -0,0 +1,75 @@
+package com.couchbase.lite.util;
+
+import com.couchbase.lite.Document;
+import com.couchbase.lite.Emitter;
+import com.couchbase.lite.LiteTestCase;
+import com.couchbase.lite.Mapper;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.QueryEnumerator;
+import com.couchbase.lite.View;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ViewGroupMapperTest extends LiteTestCase {
+
+    public static final String TAG = "ViewGroupMapperTest";
+
+    public void testMembersAreQueriedSeparately() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            Map<String, Object> props = new HashMap<String, Object>();
+            props.put("apt", i);
+            if (i % 2 == 0) {
+                props.put("name", "name" + i);
+            }
+            Document document = database.createDocument();
+            document.putProperties(props);
+        }
+
+        ViewGroupMapper group = new ViewGroupMapper();
+        int byApt = group.add(new Mapper() {
+            @Override
+            public void map(Map<String, Object> document, Emitter emitter) {
+                emitter.emit(document.get("apt"), null);
+            }
+        });
+        int byName = group.add(new Mapper() {
+            @Override
+            public void map(Map<String, Object> document, Emitter emitter) {
+                if (document.containsKey("name")) {
+                    emitter.emit(document.get("name"), document.get("apt"));
+                }
+            }
+        });
+        View view = database.getView("group");
+        view.setMap(group, "1");
+
+        Query query = view.createQuery();
+        ViewGroupMapper.restrictToMember(query, byApt);
+        QueryEnumerator rows = query.run();
+        assertEquals(5, rows.getCount());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, ((Number) ViewGroupMapper.getMemberKey(rows.getRow(i))).intValue());
+        }
+
+        query = view.createQuery();
+        query.setDescending(true);
+        ViewGroupMapper.restrictToMember(query, byName);
+        rows = query.run();
+        assertEquals(3, rows.getCount());
+        assertEquals("name4", ViewGroupMapper.getMemberKey(rows.getRow(0)));
+        assertEquals("name0", ViewGroupMapper.getMemberKey(rows.getRow(2)));
+
+        query = view.createQuery();
+        ViewGroupMapper.restrictToMember(query, byApt, 1, 3);
+        assertEquals(3, query.run().getCount());
+
+        query = view.createQuery();
+        query.setDescending(true);
+        ViewGroupMapper.restrictToMember(query, byApt, 1, 3);
+        rows = query.run();
+        assertEquals(3, rows.getCount());
+        assertEquals(3, ((Number) ViewGroupMapper.getMemberKey(rows.getRow(0))).intValue());
+        assertEquals(1, ((Number) ViewGroupMapper.getMemberKey(rows.getRow(2))).intValue());
+    }
+}
@@ -10,9 +10,15 @@ public class AndroidContext implements Context {
 
     private android.content.Context wrappedContext;
     private NetworkReachabilityManager networkReachabilityManager;
+    private AndroidStorageEngineOptions storageEngineOptions;
 
     public AndroidContext(android.content.Context wrappedContext) {
+        this(wrappedContext, new AndroidStorageEngineOptions());
+    }
+
+    public AndroidContext(android.content.Context wrappedContext, AndroidStorageEngineOptions storageEngineOptions) {
         this.wrappedContext = wrappedContext;
+        this.storageEngineOptions = storageEngineOptions;
     }
 
     @Override
@@ -37,9 +43,20 @@ public class AndroidContext implements Context {
         return wrappedContext;
     }
 
+    public AndroidStorageEngineOptions getStorageEngineOptions() {
+        return storageEngineOptions;
+    }
+
+    /**
+     * Only affects databases opened after this call.
+     */
+    public void setStorageEngineOptions(AndroidStorageEngineOptions storageEngineOptions) {
+        this.storageEngineOptions = storageEngineOptions;
+    }
+
     @Override
     public SQLiteStorageEngineFactory getSQLiteStorageEngineFactory() {
-        return new AndroidSQLiteStorageEngineFactory();
+        return new AndroidSQLiteStorageEngineFactory(storageEngineOptions);
     }
 
 
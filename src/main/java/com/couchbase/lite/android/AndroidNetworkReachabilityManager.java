@@ -1,19 +1,44 @@
 package com.couchbase.lite.android;
 
+import android.annotation.TargetApi;
 import android.content.BroadcastReceiver;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
+import android.os.Build;
 
 import com.couchbase.lite.NetworkReachabilityManager;
 import com.couchbase.lite.util.Log;
+import com.couchbase.lite.util.Trace;
+
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class AndroidNetworkReachabilityManager extends NetworkReachabilityManager {
 
+    public static final long DEFAULT_FLAP_WINDOW_MILLIS = 3 * 1000;
+
+    /**
+     * Notified when the transport, bandwidth class or metered state of the active network changes.
+     */
+    public interface NetworkQualityListener {
+        void networkQualityChanged(NetworkQuality quality);
+    }
+
     private boolean listening;
     private android.content.Context wrappedContext;
     private ConnectivityBroadcastReceiver receiver;
+    private final List<NetworkQualityListener> qualityListeners = new CopyOnWriteArrayList<NetworkQualityListener>();
+    private volatile NetworkQuality networkQuality;
+    private long flapWindowMillis = DEFAULT_FLAP_WINDOW_MILLIS;
+    private NetworkQuality pendingQuality;
+    private int pendingGeneration;
+    private Timer timer;
+    // held while delivering, so that notifications go out in the order of the changes
+    private final Object deliveryLock = new Object();
 
     public AndroidNetworkReachabilityManager(AndroidContext androidContextcontext) {
         this.listening = false;
@@ -41,30 +66,166 @@ public class AndroidNetworkReachabilityManager extends NetworkReachabilityManage
             }
             listening = false;
         }
+        cancelPendingChange();
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
     }
 
-    private class ConnectivityBroadcastReceiver extends BroadcastReceiver {
-        @Override
-        public void onReceive(android.content.Context context, Intent intent) {
-            String action = intent.getAction();
-            if (!action.equals(ConnectivityManager.CONNECTIVITY_ACTION) || listening == false) {
+    public synchronized long getFlapWindowMillis() {
+        return flapWindowMillis;
+    }
+
+    /**
+     * Losing the network is only reported once it has stayed lost for this long, so that a
+     * connection that drops and comes back within the window doesn't stop and restart every
+     * continuous replication; they carry on from where they were instead. Regaining the network,
+     * or switching to a network of another type, is reported right away. 0 reports every
+     * connectivity change as it happens.
+     */
+    public synchronized void setFlapWindowMillis(long flapWindowMillis) {
+        this.flapWindowMillis = flapWindowMillis;
+        if (flapWindowMillis <= 0) {
+            cancelPendingChange();
+        }
+    }
+
+    public void addNetworkQualityListener(NetworkQualityListener listener) {
+        qualityListeners.add(listener);
+    }
+
+    public void removeNetworkQualityListener(NetworkQualityListener listener) {
+        qualityListeners.remove(listener);
+    }
+
+    /**
+     * Returns the quality of the active network, as of the last connectivity change when
+     * listening, or as of now otherwise.
+     */
+    public NetworkQuality getNetworkQuality() {
+        NetworkQuality quality = networkQuality;
+        if (quality == null || !listening) {
+            quality = readNetworkQuality(wrappedContext);
+        }
+        return quality;
+    }
+
+    /**
+     * Called for every connectivity change with the quality of the new active network.
+     */
+    protected void networkChanged(NetworkQuality quality) {
+        Log.v(Log.TAG_SYNC, "%s: networkChanged() %s", this, quality);
+        long delayMillis;
+        final int generation;
+        synchronized (this) {
+            NetworkQuality current = networkQuality;
+            delayMillis = flapWindowMillis;
+            generation = ++pendingGeneration;
+            pendingQuality = null;
+            // connecting, switching networks or staying offline is reported right away
+            if (delayMillis > 0 && !quality.isConnected() && current != null && current.isConnected()) {
+                pendingQuality = quality;
+                if (timer == null) {
+                    timer = new Timer("AndroidNetworkReachabilityManager", true);
+                }
+                timer.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        NetworkQuality quality;
+                        synchronized (AndroidNetworkReachabilityManager.this) {
+                            if (generation != pendingGeneration || pendingQuality == null) {
+                                return;
+                            }
+                            quality = pendingQuality;
+                        }
+                        Log.v(Log.TAG_SYNC, "%s: network lost for longer than %d ms", AndroidNetworkReachabilityManager.this, getFlapWindowMillis());
+                        deliver(quality, false, generation);
+                    }
+                }, delayMillis);
                 return;
             }
+        }
+        // without a window every broadcast is reported, as before
+        deliver(quality, delayMillis <= 0, generation);
+    }
+
+    /**
+     * Delivers the change made by networkChanged() call number generation, unless a later
+     * change, or cancelling a pending one, has superseded it by the time the delivery lock is held.
+     */
+    private void deliver(NetworkQuality quality, boolean always, int generation) {
+        synchronized (deliveryLock) {
+            NetworkQuality previous;
+            synchronized (this) {
+                if (generation != pendingGeneration) {
+                    return;
+                }
+                pendingQuality = null;
+                previous = networkQuality;
+                networkQuality = quality;
+            }
+            notifyChange(previous, quality, always);
+        }
+    }
 
-            boolean bOnline = isOnline(context);
-            Log.v(Log.TAG_SYNC, "BroadcastReceiver.onReceive() bOnline=" + bOnline);
+    private void notifyChange(NetworkQuality previous, NetworkQuality quality, boolean always) {
+        Trace.record(Trace.NETWORK_CHANGE, quality.getTransport().ordinal(), quality.getBandwidthClass().ordinal());
 
-            if (bOnline) {
+        boolean wasConnected = previous != null && previous.isConnected();
+        // connections made over the previous network don't survive a switch to another one
+        boolean switched = wasConnected && quality.isConnected() && quality.getTransport() != previous.getTransport();
+        if (always || previous == null || quality.isConnected() != wasConnected || switched) {
+            if (quality.isConnected()) {
                 notifyListenersNetworkReachable();
             } else {
                 notifyListenersNetworkUneachable();
             }
         }
+        if (!quality.equals(previous)) {
+            for (NetworkQualityListener listener : qualityListeners) {
+                listener.networkQualityChanged(quality);
+            }
+        }
+    }
+
+    private synchronized void cancelPendingChange() {
+        // changes reported right away are left alone, only a lost network can be pending
+        if (pendingQuality != null) {
+            pendingGeneration++;
+            pendingQuality = null;
+        }
+    }
+
+    private class ConnectivityBroadcastReceiver extends BroadcastReceiver {
+        @Override
+        public void onReceive(android.content.Context context, Intent intent) {
+            String action = intent.getAction();
+            if (!action.equals(ConnectivityManager.CONNECTIVITY_ACTION) || listening == false) {
+                return;
+            }
+
+            networkChanged(readNetworkQuality(context));
+        }
     }
 
-    private boolean isOnline(android.content.Context context) {
+    private static NetworkQuality readNetworkQuality(android.content.Context context) {
         ConnectivityManager cm = (ConnectivityManager) context.getSystemService(android.content.Context.CONNECTIVITY_SERVICE);
         NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
-        return activeNetwork != null && activeNetwork.isConnected();
+        if (activeNetwork == null || !activeNetwork.isConnected()) {
+            return NetworkQuality.OFFLINE;
+        }
+        boolean metered;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            metered = isActiveNetworkMetered(cm);
+        } else {
+            metered = activeNetwork.getType() == ConnectivityManager.TYPE_MOBILE;
+        }
+        return NetworkQuality.fromNetworkInfo(activeNetwork, metered);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static boolean isActiveNetworkMetered(ConnectivityManager cm) {
+        return cm.isActiveNetworkMetered();
     }
 }
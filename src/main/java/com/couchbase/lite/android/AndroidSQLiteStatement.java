@@ -0,0 +1,152 @@
+package com.couchbase.lite.android;
+
+import android.annotation.TargetApi;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+import com.couchbase.lite.storage.SQLException;
+
+/**
+ * A compiled statement obtained from AndroidSQLiteStorageEngine.compileStatement().
+ *
+ * Bind indexes start at 1. Each instance must only be used by one thread, and close() must be
+ * called when done so the compiled statement can go back to the engine's cache.
+ */
+public class AndroidSQLiteStatement {
+
+    private final SQLiteStatementCache cache;
+    private final String sql;
+    private SQLiteStatement statement;
+
+    AndroidSQLiteStatement(SQLiteStatementCache cache, String sql) {
+        this.cache = cache;
+        this.sql = sql;
+        this.statement = cache.acquire(sql);
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public void bindNull(int index) {
+        statement.bindNull(index);
+    }
+
+    public void bindLong(int index, long value) {
+        statement.bindLong(index, value);
+    }
+
+    public void bindDouble(int index, double value) {
+        statement.bindDouble(index, value);
+    }
+
+    public void bindString(int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    public void bindBlob(int index, byte[] value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindBlob(index, value);
+        }
+    }
+
+    /**
+     * Binds a value of any supported type, using the same conversions as
+     * SQLiteDatabase.execSQL(String, Object[]).
+     */
+    public void bindObject(int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof String) {
+            statement.bindString(index, (String) value);
+        } else if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, ((Boolean) value) ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+
+    public void bindAll(Object[] values) {
+        if (values == null) {
+            return;
+        }
+        for (int i = 0; i < values.length; i++) {
+            bindObject(i + 1, values[i]);
+        }
+    }
+
+    public void clearBindings() {
+        statement.clearBindings();
+    }
+
+    public void execute() throws SQLException {
+        try {
+            statement.execute();
+        } catch (android.database.SQLException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    /**
+     * @return the row id of the inserted row, or -1 if nothing was inserted.
+     */
+    public long executeInsert() throws SQLException {
+        try {
+            return statement.executeInsert();
+        } catch (android.database.SQLException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    /**
+     * @return the number of rows changed. Requires API 11 or later.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public int executeUpdateDelete() throws SQLException {
+        try {
+            return statement.executeUpdateDelete();
+        } catch (android.database.SQLException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    /**
+     * Runs a query that returns a single row and column, e.g. a lookup by primary key.
+     * Throws SQLException (wrapping SQLiteDoneException) if there is no row.
+     */
+    public long simpleQueryForLong() throws SQLException {
+        try {
+            return statement.simpleQueryForLong();
+        } catch (android.database.SQLException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    public String simpleQueryForString() throws SQLException {
+        try {
+            return statement.simpleQueryForString();
+        } catch (android.database.SQLException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    public void close() {
+        if (statement != null) {
+            cache.release(sql, statement);
+            statement = null;
+        }
+    }
+}
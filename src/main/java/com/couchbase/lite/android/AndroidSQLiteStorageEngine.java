@@ -16,23 +16,66 @@
 
 package com.couchbase.lite.android;
 
+import android.annotation.TargetApi;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
 
 import com.couchbase.lite.storage.ContentValues;
 import com.couchbase.lite.storage.Cursor;
 import com.couchbase.lite.storage.SQLException;
 import com.couchbase.lite.storage.SQLiteStorageEngine;
 import com.couchbase.lite.util.Log;
+import com.couchbase.lite.util.Trace;
 import com.couchbase.touchdb.RevCollator;
 import com.couchbase.touchdb.TDCollateJSON;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AndroidSQLiteStorageEngine implements SQLiteStorageEngine {
     public static final String TAG = "AndroidSQLiteStorageEngine";
 
+    public static final long DEFAULT_HANDLE_POOL_MEMORY_BUDGET = 16 * 1024 * 1024;
+
+    // Upper limit enforced by SQLiteDatabase.setMaxSqlCacheSize()
+    private static final int MAX_SQL_CACHE_SIZE = 100;
+
+    private static volatile boolean nativeLibrariesLoaded;
+
     private SQLiteDatabase database;
+    private String path;
+    private OpenTimings openTimings;
+    private boolean schemaChecked;
+    private final AndroidStorageEngineOptions options;
+    private boolean walEnabled;
+    private final AtomicInteger commitsSinceCheckpoint = new AtomicInteger();
+    private SQLiteStatementCache statementCache;
+    private final ContentValuesSqlCache contentValuesSqlCache = new ContentValuesSqlCache();
+    private final StorageEngineStats stats;
+    private final SlowQueryLog slowQueryLog;
+    private SQLiteDatabase[] readConnections;
+    private final AtomicInteger nextReadConnection = new AtomicInteger();
+    // Transactions opened by each thread, so its reads see its own uncommitted writes and only
+    // commits count toward the checkpoint interval
+    private final ThreadLocal<TransactionState> transactionState = new ThreadLocal<TransactionState>() {
+        @Override
+        protected TransactionState initialValue() {
+            return new TransactionState();
+        }
+    };
+
+    public AndroidSQLiteStorageEngine() {
+        this(new AndroidStorageEngineOptions());
+    }
+
+    public AndroidSQLiteStorageEngine(AndroidStorageEngineOptions options) {
+        this.options = options;
+        this.stats = options.getStats();
+        this.slowQueryLog = options.getSlowQueryLog();
+    }
 
     @Override
     public boolean open(String path) {
@@ -40,6 +83,26 @@ public class AndroidSQLiteStorageEngine implements SQLiteStorageEngine {
             return true;
         }
 
+        this.path = path;
+        if (options.getHandlePoolIdleMillis() > 0 && reusePooledHandle(path)) {
+            return true;
+        }
+        // a handle parked with other options, or on a file that has been replaced since, must not
+        // outlive this open: closing it later could checkpoint into, or delete the -wal of, the new file
+        SQLiteHandlePool.getInstance().closeAll(path);
+
+        openTimings = new OpenTimings(path);
+        schemaChecked = false;
+        if (stats != null) {
+            stats.recordOpen(openTimings);
+        }
+        if (!nativeLibrariesLoaded) {
+            // the first call loads the library, in the class initializer
+            openTimings.add(OpenTimings.PHASE_LOAD_JSON_COLLATOR, TDCollateJSON.getLoadLibraryNanos());
+            openTimings.add(OpenTimings.PHASE_LOAD_REV_COLLATOR, RevCollator.getLoadLibraryNanos());
+            nativeLibrariesLoaded = true;
+        }
+
         try {
             // Write-Ahead Logging (WAL) http://sqlite.org/wal.html
             // http://developer.android.com/reference/android/database/sqlite/SQLiteDatabase.html#enableWriteAheadLogging()
@@ -47,15 +110,34 @@ public class AndroidSQLiteStorageEngine implements SQLiteStorageEngine {
             // enableWriteAheadLogging() is available from API 11, but it does not work with API 9 and 10.
             // Minimum version CBL Android supports is API 9
 
-            // NOTE: Not obvious difference. But it seems Without WAL is faster.
-            //       WAL consumes more memory, it might make GC busier.
-
-            //database = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.CREATE_IF_NECESSARY | SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
+            // NOTE: ENABLE_WRITE_AHEAD_LOGGING makes Android open a pool of secondary connections,
+            //       but the native collators are only registered on the primary connection.
+            //       So WAL is turned on with PRAGMA journal_mode instead (see configureJournalMode()),
+            //       which keeps a single connection per SQLiteDatabase.
+            long start = System.nanoTime();
             database = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.CREATE_IF_NECESSARY);
+            openTimings.add(OpenTimings.PHASE_OPEN_DATABASE, System.nanoTime() - start);
 
             Log.v(Log.TAG_DATABASE, "%s: Opened Android sqlite db", this);
+            start = System.nanoTime();
             TDCollateJSON.registerCustomCollators(database);
             RevCollator.register(database);
+            openTimings.add(OpenTimings.PHASE_REGISTER_COLLATORS, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            // page_size has to be set before switching to WAL
+            applyTuningProfile(database, true);
+            configureJournalMode();
+            applySynchronous();
+            configureStatementCache();
+            openTimings.add(OpenTimings.PHASE_CONFIGURE, System.nanoTime() - start);
+
+            if (options.getReadConnectionPoolSize() > 0) {
+                start = System.nanoTime();
+                openReadConnections(path);
+                openTimings.add(OpenTimings.PHASE_READ_CONNECTIONS, System.nanoTime() - start);
+            }
+            Log.v(Log.TAG_DATABASE, "%s: %s", this, openTimings);
         } catch(SQLiteException e) {
             Log.e(TAG, "Error opening", e);
 
@@ -69,8 +151,37 @@ public class AndroidSQLiteStorageEngine implements SQLiteStorageEngine {
         return database.isOpen();
     }
 
+    private boolean reusePooledHandle(String path) {
+        long start = System.nanoTime();
+        Handle handle = SQLiteHandlePool.getInstance().take(path, options);
+        if (handle == null) {
+            return false;
+        }
+        database = handle.database;
+        readConnections = handle.readConnections;
+        statementCache = handle.statementCache;
+        walEnabled = handle.walEnabled;
+
+        openTimings = new OpenTimings(path);
+        schemaChecked = false;
+        openTimings.add(OpenTimings.PHASE_REUSE_HANDLE, System.nanoTime() - start);
+        if (stats != null) {
+            stats.recordOpen(openTimings);
+        }
+        Log.v(Log.TAG_DATABASE, "%s: Reused pooled Android sqlite db", this);
+        return true;
+    }
+
     @Override
     public int getVersion() {
+        if (!schemaChecked) {
+            // the first read is the schema check that follows open()
+            schemaChecked = true;
+            long start = System.nanoTime();
+            int version = database.getVersion();
+            openTimings.add(OpenTimings.PHASE_SCHEMA_CHECK, System.nanoTime() - start);
+            return version;
+        }
         return database.getVersion();
     }
 
@@ -79,45 +190,119 @@ public class AndroidSQLiteStorageEngine implements SQLiteStorageEngine {
         database.setVersion(version);
     }
 
+    /**
+     * Returns the time spent in each phase of open(), or null if the engine was never opened.
+     */
+    public OpenTimings getOpenTimings() {
+        return openTimings;
+    }
+
     @Override
     public boolean isOpen() {
-        return database.isOpen();
+        return database != null && database.isOpen();
     }
 
     @Override
     public void beginTransaction() {
+        long start = startTiming();
+        try {
+            // NOTE: Use beginTransactionNonExclusive() with WAL
+            //       http://stackoverflow.com/questions/8104832/sqlite-simultaneous-reading-and-writing
+            if (walEnabled) {
+                beginTransactionNonExclusive();
+            } else {
+                database.beginTransaction();
+            }
+            transactionState.get().begin();
+            Trace.record(Trace.TRANSACTION_BEGIN, 0, 0);
+        } finally {
+            endTiming("BEGIN TRANSACTION", start, -1);
+        }
+    }
 
-        database.beginTransaction();
-
-        // NOTE: Use beginTransactionNonExclusive() with ENABLE_WRITE_AHEAD_LOGGING
-        //       http://stackoverflow.com/questions/8104832/sqlite-simultaneous-reading-and-writing
-
-        // database.beginTransactionNonExclusive();
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void beginTransactionNonExclusive() {
+        database.beginTransactionNonExclusive();
     }
 
     @Override
     public void endTransaction() {
-        database.endTransaction();
+        long start = startTiming();
+        boolean tracing = Trace.isEnabled();
+        long traceStart = tracing ? System.nanoTime() : 0;
+        boolean committed;
+        try {
+            committed = transactionState.get().end();
+            database.endTransaction();
+        } finally {
+            endTiming("END TRANSACTION", start, -1);
+        }
+        if (tracing) {
+            Trace.record(Trace.TRANSACTION_END, 0, (System.nanoTime() - traceStart) / 1000);
+        }
+
+        int checkpointInterval = options.getCheckpointInterval();
+        if (walEnabled && checkpointInterval > 0 && committed) {
+            if (commitsSinceCheckpoint.incrementAndGet() >= checkpointInterval) {
+                commitsSinceCheckpoint.set(0);
+                checkpoint();
+            }
+        }
     }
 
     @Override
     public void setTransactionSuccessful() {
         database.setTransactionSuccessful();
+        transactionState.get().successful = true;
     }
 
     @Override
     public void execSQL(String sql) throws SQLException {
+        long start = startTiming();
         try {
             database.execSQL(sql);
         } catch (android.database.SQLException e) {
             throw new SQLException(e);
+        } finally {
+            endQueryTiming(sql, null, start);
         }
     }
 
     @Override
     public void execSQL(String sql, Object[] bindArgs) throws SQLException {
+        long start = startTiming();
         try {
-            database.execSQL(sql, bindArgs);
+            if (statementCache != null && isCacheable(sql)) {
+                AndroidSQLiteStatement statement = compileStatement(sql);
+                try {
+                    statement.bindAll(bindArgs);
+                    statement.execute();
+                } finally {
+                    statement.close();
+                }
+                return;
+            }
+
+            try {
+                database.execSQL(sql, bindArgs);
+            } catch (android.database.SQLException e) {
+                throw new SQLException(e);
+            }
+        } finally {
+            endQueryTiming(sql, bindArgs, start);
+        }
+    }
+
+    /**
+     * Returns a compiled statement for the given SQL, reusing a cached one when possible.
+     * The caller must close() it when done.
+     */
+    public AndroidSQLiteStatement compileStatement(String sql) throws SQLException {
+        try {
+            if (statementCache == null) {
+                return new AndroidSQLiteStatement(new SQLiteStatementCache(database, 0), sql);
+            }
+            return new AndroidSQLiteStatement(statementCache, sql);
         } catch (android.database.SQLException e) {
             throw new SQLException(e);
         }
@@ -125,33 +310,176 @@ public class AndroidSQLiteStorageEngine implements SQLiteStorageEngine {
 
     @Override
     public Cursor rawQuery(String sql, String[] selectionArgs) {
-        return new SQLiteCursorWrapper(database.rawQuery(sql, selectionArgs));
+        SQLiteDatabase db = databaseForQuery(sql);
+        if (!isTiming()) {
+            return new SQLiteCursorWrapper(db.rawQuery(sql, selectionArgs));
+        }
+        // The query mostly runs when the cursor is first moved, so TimedCursorWrapper also
+        // times moveToNext() and records everything once the cursor is closed
+        long start = System.nanoTime();
+        android.database.Cursor cursor = db.rawQuery(sql, selectionArgs);
+        return new TimedCursorWrapper(cursor, db, sql, selectionArgs, System.nanoTime() - start);
     }
 
     @Override
     public long insert(String table, String nullColumnHack, ContentValues values) {
-        return database.insert(table, nullColumnHack, _toAndroidContentValues(values));
+        long start = startTiming();
+        try {
+            if (canBindDirectly(values)) {
+                // Same contract as SQLiteDatabase.insert(): log the error and return -1
+                try {
+                    return insertDirect(table, values, SQLiteDatabase.CONFLICT_NONE);
+                } catch (android.database.SQLException e) {
+                    Log.e(TAG, "Error inserting %s", e, values);
+                    return -1;
+                }
+            }
+            return database.insert(table, nullColumnHack, _toAndroidContentValues(values));
+        } finally {
+            if (stats != null) {
+                endTiming("INSERT INTO " + table, start, -1);
+            }
+        }
     }
 
     @Override
     public long insertWithOnConflict(String table, String nullColumnHack, ContentValues initialValues, int conflictAlgorithm) {
-        return database.insertWithOnConflict(table, nullColumnHack, _toAndroidContentValues(initialValues), conflictAlgorithm);
+        long start = startTiming();
+        try {
+            if (canBindDirectly(initialValues)) {
+                return insertDirect(table, initialValues, conflictAlgorithm);
+            }
+            return database.insertWithOnConflict(table, nullColumnHack, _toAndroidContentValues(initialValues), conflictAlgorithm);
+        } finally {
+            if (stats != null) {
+                endTiming("INSERT INTO " + table, start, -1);
+            }
+        }
+    }
+
+    /**
+     * Inserts all rows in a single transaction, reusing one compiled statement for consecutive
+     * rows with the same columns.
+     *
+     * @return the row id of each inserted row, or -1 for rows skipped by the conflict algorithm.
+     * @throws SQLException if any row fails, in which case nothing is inserted
+     */
+    public long[] insertBatch(String table, List<ContentValues> rows, int conflictAlgorithm) throws SQLException {
+        long start = startTiming();
+        long[] rowIds = new long[rows.size()];
+        beginTransaction();
+        try {
+            String sql = null;
+            SQLiteStatement statement = null;
+            try {
+                for (int i = 0; i < rowIds.length; i++) {
+                    ContentValues values = rows.get(i);
+                    if (!canBindDirectly(values)) {
+                        rowIds[i] = database.insertWithOnConflict(table, null, _toAndroidContentValues(values), conflictAlgorithm);
+                        continue;
+                    }
+                    ContentValuesSqlCache.Shape shape = contentValuesSqlCache.insertShape(table, values, conflictAlgorithm);
+                    if (statement == null || !shape.sql.equals(sql)) {
+                        if (statement != null) {
+                            statementCache.release(sql, statement);
+                        }
+                        sql = shape.sql;
+                        statement = statementCache.acquire(sql);
+                    }
+                    bindContentValues(statement, shape.columns, values);
+                    rowIds[i] = statement.executeInsert();
+                }
+            } catch (android.database.SQLException e) {
+                throw new SQLException(e);
+            } finally {
+                if (statement != null) {
+                    statementCache.release(sql, statement);
+                }
+            }
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+            if (stats != null) {
+                endTiming("INSERT BATCH INTO " + table, start, rowIds.length);
+            }
+        }
+        return rowIds;
     }
 
     @Override
     public int update(String table, ContentValues values, String whereClause, String[] whereArgs) {
-        return database.update(table, _toAndroidContentValues(values), whereClause, whereArgs);
+        long start = startTiming();
+        try {
+            // executeUpdateDelete() is available from API 11
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB && canBindDirectly(values)) {
+                return updateDirect(table, values, whereClause, whereArgs);
+            }
+            return database.update(table, _toAndroidContentValues(values), whereClause, whereArgs);
+        } finally {
+            if (stats != null) {
+                endTiming("UPDATE " + table + " WHERE " + whereClause, start, -1);
+            }
+        }
     }
 
     @Override
     public int delete(String table, String whereClause, String[] whereArgs) {
-        return database.delete(table, whereClause, whereArgs);
+        long start = startTiming();
+        try {
+            return database.delete(table, whereClause, whereArgs);
+        } finally {
+            if (stats != null) {
+                endTiming("DELETE FROM " + table + " WHERE " + whereClause, start, -1);
+            }
+        }
     }
 
     @Override
     public void close() {
-        database.close();
-        Log.v(Log.TAG_DATABASE, "%s: Closed Android sqlite db", this);
+        if (database == null) {
+            // already closed, or open() failed
+            return;
+        }
+        Handle handle = new Handle(path, options, database, readConnections, statementCache, walEnabled);
+        readConnections = null;
+        statementCache = null;
+        if (options.getHandlePoolIdleMillis() > 0 && path != null && !database.inTransaction()) {
+            handle.estimateMemory();
+            SQLiteHandlePool.getInstance().put(handle);
+            Log.v(Log.TAG_DATABASE, "%s: Returned Android sqlite db to the pool", this);
+        } else {
+            handle.close();
+        }
+        // either way the handle isn't ours anymore
+        database = null;
+    }
+
+    /**
+     * Closes the database handles kept open by AndroidStorageEngineOptions.setHandlePoolIdleMillis(),
+     * for instance from ComponentCallbacks2.onTrimMemory().
+     */
+    public static void closePooledHandles() {
+        SQLiteHandlePool.getInstance().closeAll();
+    }
+
+    /**
+     * Closes the pooled handles of the database at path. Call this before deleting, moving or
+     * replacing the database file.
+     */
+    public static void closePooledHandles(String path) {
+        SQLiteHandlePool.getInstance().closeAll(path);
+    }
+
+    /**
+     * Upper bound, in bytes, of the page cache memory held by all pooled database handles
+     * together. Least recently closed handles are closed first once it is exceeded.
+     */
+    public static long getHandlePoolMemoryBudget() {
+        return SQLiteHandlePool.getInstance().getMemoryBudget();
+    }
+
+    public static void setHandlePoolMemoryBudget(long handlePoolMemoryBudget) {
+        SQLiteHandlePool.getInstance().setMemoryBudget(handlePoolMemoryBudget);
     }
 
     @Override
@@ -161,6 +489,348 @@ public class AndroidSQLiteStorageEngine implements SQLiteStorageEngine {
                 '}';
     }
 
+    /**
+     * Runs a passive WAL checkpoint. Does nothing unless the database is in WAL mode.
+     */
+    public void checkpoint() {
+        if (!walEnabled) {
+            return;
+        }
+        try {
+            queryPragma("PRAGMA wal_checkpoint(PASSIVE)");
+        } catch (SQLiteException e) {
+            Log.w(TAG, "%s: WAL checkpoint failed", e, this);
+        }
+    }
+
+    public boolean isWriteAheadLoggingEnabled() {
+        return walEnabled;
+    }
+
+    private boolean isTiming() {
+        return stats != null || slowQueryLog != null;
+    }
+
+    private long startTiming() {
+        return isTiming() ? System.nanoTime() : 0;
+    }
+
+    private void endTiming(String sql, long start, int rows) {
+        if (stats != null) {
+            stats.record(sql, System.nanoTime() - start, rows);
+        }
+    }
+
+    private void endQueryTiming(String sql, Object[] bindArgs, long start) {
+        if (isTiming()) {
+            recordQuery(database, sql, bindArgs, System.nanoTime() - start, -1);
+        }
+    }
+
+    /**
+     * db is the connection that ran the query: a read connection's snapshot can have tables or
+     * indexes that the writer has dropped since, or not yet see the ones it created.
+     */
+    private void recordQuery(SQLiteDatabase db, String sql, Object[] bindArgs, long elapsedNanos, int rows) {
+        if (stats != null) {
+            stats.record(sql, elapsedNanos, rows);
+        }
+        if (slowQueryLog != null && slowQueryLog.isSlow(elapsedNanos)
+                && slowQueryLog.markCaptured(StorageEngineStats.normalize(sql))) {
+            String queryPlan = explainQueryPlan(db, sql, bindArgs);
+            slowQueryLog.add(new SlowQueryLog.Entry(sql, describeArgTypes(bindArgs), elapsedNanos, queryPlan));
+            Log.w(TAG, "%s: Slow query (%d ms): %s\n%s", this, elapsedNanos / 1000000, sql, queryPlan);
+        }
+    }
+
+    private String explainQueryPlan(SQLiteDatabase db, String sql, Object[] bindArgs) {
+        // The plan doesn't depend on the bound values, and rawQuery() only binds non-null strings
+        String[] args = null;
+        if (bindArgs != null) {
+            args = new String[bindArgs.length];
+            for (int i = 0; i < bindArgs.length; i++) {
+                args[i] = bindArgs[i] != null ? bindArgs[i].toString() : "";
+            }
+        }
+        try {
+            android.database.Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+            try {
+                StringBuilder plan = new StringBuilder();
+                int detailColumn = cursor.getColumnCount() - 1;
+                while (cursor.moveToNext()) {
+                    if (plan.length() > 0) {
+                        plan.append('\n');
+                    }
+                    plan.append(cursor.getString(detailColumn));
+                }
+                return plan.toString();
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            return "EXPLAIN QUERY PLAN failed: " + e.getMessage();
+        }
+    }
+
+    private static String describeArgTypes(Object[] bindArgs) {
+        if (bindArgs == null) {
+            return "[]";
+        }
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < bindArgs.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(bindArgs[i] != null ? bindArgs[i].getClass().getSimpleName() : "null");
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Routes SELECTs to a read connection, unless the calling thread is inside a transaction.
+     */
+    private SQLiteDatabase databaseForQuery(String sql) {
+        SQLiteDatabase[] readers = readConnections;
+        if (readers == null || transactionState.get().depth > 0 || !startsWithKeyword(sql, "SELECT")) {
+            return database;
+        }
+        int index = (nextReadConnection.getAndIncrement() & Integer.MAX_VALUE) % readers.length;
+        return readers[index];
+    }
+
+    private void openReadConnections(String path) {
+        int poolSize = options.getReadConnectionPoolSize();
+        if (poolSize <= 0) {
+            return;
+        }
+        // Without WAL, readers would be blocked by (and block) the writer. Ask the writer
+        // rather than trusting the options, SQLite may have refused to switch.
+        String journalMode = walEnabled ? queryPragma("PRAGMA journal_mode") : null;
+        if (!"wal".equalsIgnoreCase(journalMode)) {
+            Log.w(TAG, "%s: Read connections require WAL, journal_mode is %s, not opening them", this, journalMode);
+            return;
+        }
+
+        SQLiteDatabase[] readers = new SQLiteDatabase[poolSize];
+        try {
+            for (int i = 0; i < poolSize; i++) {
+                readers[i] = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY);
+                // each SQLiteDatabase has its own connection, which needs its own collators
+                TDCollateJSON.registerCustomCollators(readers[i]);
+                RevCollator.register(readers[i]);
+                applyTuningProfile(readers[i], false);
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                    setMaxSqlCacheSize(readers[i], Math.min(options.getStatementCacheSize(), MAX_SQL_CACHE_SIZE));
+                }
+            }
+        } catch (SQLiteException e) {
+            Log.w(TAG, "%s: Unable to open read connections, all queries will use the writer", e, this);
+            for (SQLiteDatabase reader : readers) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+            return;
+        }
+        readConnections = readers;
+        Log.v(Log.TAG_DATABASE, "%s: Opened %d read connections", this, poolSize);
+    }
+
+    /**
+     * @param writer false for read connections, which only need the per-connection settings
+     */
+    private void applyTuningProfile(SQLiteDatabase db, boolean writer) {
+        StorageTuningProfile profile = options.getTuningProfile();
+        if (profile == null || profile == StorageTuningProfile.DEFAULT) {
+            return;
+        }
+        if (writer && profile.getPageSize() > 0) {
+            queryPragma(db, "PRAGMA page_size=" + profile.getPageSize());
+        }
+        if (profile.getCacheSize() != null) {
+            queryPragma(db, "PRAGMA cache_size=" + profile.getCacheSize());
+        }
+        if (profile.getMmapSize() != null) {
+            queryPragma(db, "PRAGMA mmap_size=" + profile.getMmapSize());
+        }
+        if (profile.getTempStore() != null) {
+            queryPragma(db, "PRAGMA temp_store=" + profile.getTempStore());
+        }
+        Log.v(Log.TAG_DATABASE, "%s: Applied %s", this, profile);
+    }
+
+    /**
+     * synchronous=NORMAL is only durable with WAL: with a rollback journal, a power loss right
+     * after a commit can corrupt the database. So a profile's NORMAL is only applied once the
+     * writer is actually in WAL mode, otherwise the connection keeps its default (FULL).
+     */
+    private void applySynchronous() {
+        StorageTuningProfile profile = options.getTuningProfile();
+        if (profile == null || profile.getSynchronous() == null) {
+            return;
+        }
+        if ("NORMAL".equalsIgnoreCase(profile.getSynchronous())
+                && !"wal".equalsIgnoreCase(queryPragma("PRAGMA journal_mode"))) {
+            Log.v(Log.TAG_DATABASE, "%s: Not in WAL mode, keeping the default synchronous", this);
+            return;
+        }
+        queryPragma("PRAGMA synchronous=" + profile.getSynchronous());
+    }
+
+    private void configureJournalMode() {
+        walEnabled = false;
+        if (options.getJournalMode() != AndroidStorageEngineOptions.JournalMode.WAL) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            Log.w(TAG, "%s: WAL requires API 11 or later, using the default journal mode", this);
+            return;
+        }
+
+        // a no-op when the file is already in WAL mode
+        String journalMode = queryPragma("PRAGMA journal_mode=WAL");
+        if (!"wal".equalsIgnoreCase(journalMode)) {
+            Log.w(TAG, "%s: Unable to enable WAL, journal_mode is %s", this, journalMode);
+            return;
+        }
+        queryPragma("PRAGMA wal_autocheckpoint=" + options.getWalAutoCheckpoint());
+        walEnabled = true;
+        Log.v(Log.TAG_DATABASE, "%s: Enabled WAL with %s", this, options);
+    }
+
+    private void configureStatementCache() {
+        int cacheSize = options.getStatementCacheSize();
+        if (cacheSize <= 0) {
+            statementCache = null;
+            return;
+        }
+        statementCache = new SQLiteStatementCache(database, cacheSize);
+
+        // rawQuery() can't use SQLiteStatement, but the connection keeps its own cache of
+        // prepared statements (25 by default), which is too small for the SQL we run.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            setMaxSqlCacheSize(database, Math.min(cacheSize, MAX_SQL_CACHE_SIZE));
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void setMaxSqlCacheSize(SQLiteDatabase db, int cacheSize) {
+        if (cacheSize <= 0) {
+            return;
+        }
+        try {
+            db.setMaxSqlCacheSize(cacheSize);
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "%s: Unable to set the SQL cache size to %d", e, this, cacheSize);
+        }
+    }
+
+    // Only plain DML is worth caching; everything else (DDL, PRAGMA, ...) is rare and some of it
+    // needs the special handling SQLiteDatabase.execSQL() gives it.
+    private static boolean isCacheable(String sql) {
+        return startsWithKeyword(sql, "INSERT")
+                || startsWithKeyword(sql, "UPDATE")
+                || startsWithKeyword(sql, "DELETE")
+                || startsWithKeyword(sql, "REPLACE");
+    }
+
+    private static boolean startsWithKeyword(String sql, String keyword) {
+        int i = 0;
+        int length = sql.length();
+        while (i < length && Character.isWhitespace(sql.charAt(i))) {
+            i++;
+        }
+        return sql.regionMatches(true, i, keyword, 0, keyword.length());
+    }
+
+    private String queryPragma(String pragma) {
+        return queryPragma(database, pragma);
+    }
+
+    // PRAGMAs that return a row have to go through rawQuery() on newer versions of Android
+    private static String queryPragma(SQLiteDatabase db, String pragma) {
+        android.database.Cursor cursor = db.rawQuery(pragma, null);
+        try {
+            return cursor.moveToNext() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * insert(), insertWithOnConflict() and update() bind ContentValues straight into a cached
+     * statement when the statement cache is on and every value has a type
+     * _toAndroidContentValues() supports. Otherwise they fall back to converting the values.
+     */
+    private boolean canBindDirectly(ContentValues values) {
+        if (statementCache == null || values.size() == 0) {
+            return false;
+        }
+        for (Map.Entry<String, Object> value : values.valueSet()) {
+            Object object = value.getValue();
+            if (object != null && !(object instanceof String) && !(object instanceof Integer)
+                    && !(object instanceof Long) && !(object instanceof Boolean)
+                    && !(object instanceof byte[])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long insertDirect(String table, ContentValues values, int conflictAlgorithm) {
+        ContentValuesSqlCache.Shape shape = contentValuesSqlCache.insertShape(table, values, conflictAlgorithm);
+        SQLiteStatement statement = statementCache.acquire(shape.sql);
+        try {
+            bindContentValues(statement, shape.columns, values);
+            return statement.executeInsert();
+        } finally {
+            statementCache.release(shape.sql, statement);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private int updateDirect(String table, ContentValues values, String whereClause, String[] whereArgs) {
+        ContentValuesSqlCache.Shape shape = contentValuesSqlCache.updateShape(table, values, whereClause);
+        SQLiteStatement statement = statementCache.acquire(shape.sql);
+        try {
+            bindContentValues(statement, shape.columns, values);
+            if (whereArgs != null) {
+                for (int i = 0; i < whereArgs.length; i++) {
+                    // like SQLiteDatabase.update(), which binds a null argument as NULL
+                    int index = shape.columns.length + i + 1;
+                    if (whereArgs[i] == null) {
+                        statement.bindNull(index);
+                    } else {
+                        statement.bindString(index, whereArgs[i]);
+                    }
+                }
+            }
+            return statement.executeUpdateDelete();
+        } finally {
+            statementCache.release(shape.sql, statement);
+        }
+    }
+
+    private static void bindContentValues(SQLiteStatement statement, String[] columns, ContentValues values) {
+        for (int i = 0; i < columns.length; i++) {
+            Object value = values.get(columns[i]);
+            int index = i + 1;
+            if (value == null) {
+                statement.bindNull(index);
+            } else if (value instanceof String) {
+                statement.bindString(index, (String) value);
+            } else if (value instanceof Integer) {
+                statement.bindLong(index, (Integer) value);
+            } else if (value instanceof Long) {
+                statement.bindLong(index, (Long) value);
+            } else if (value instanceof Boolean) {
+                statement.bindLong(index, ((Boolean) value) ? 1 : 0);
+            } else {
+                statement.bindBlob(index, (byte[]) value);
+            }
+        }
+    }
+
     private android.content.ContentValues _toAndroidContentValues(ContentValues values) {
         android.content.ContentValues contentValues = new android.content.ContentValues(values.size());
 
@@ -183,6 +853,125 @@ public class AndroidSQLiteStorageEngine implements SQLiteStorageEngine {
         return contentValues;
     }
 
+    /**
+     * Mirrors SQLiteDatabase's nesting: the outermost transaction only commits if every level,
+     * nested ones included, was marked successful before it ended.
+     */
+    private static class TransactionState {
+        int depth;
+        boolean successful;
+        boolean failed;
+
+        void begin() {
+            depth++;
+            successful = false;
+        }
+
+        /**
+         * Returns true if this ends the outermost transaction and it commits.
+         */
+        boolean end() {
+            if (!successful) {
+                failed = true;
+            }
+            successful = false;
+            if (--depth > 0) {
+                return false;
+            }
+            boolean committed = !failed;
+            depth = 0;
+            failed = false;
+            return committed;
+        }
+    }
+
+    /**
+     * Everything open() sets up, so it can be closed later or parked in SQLiteHandlePool.
+     */
+    static class Handle {
+        private final String path;
+        private final AndroidStorageEngineOptions options;
+        private final SQLiteDatabase database;
+        private final SQLiteDatabase[] readConnections;
+        private final SQLiteStatementCache statementCache;
+        private final boolean walEnabled;
+        private long estimatedBytes;
+        private FileIdentity fileIdentity;
+        private long expiresAt;
+
+        Handle(String path, AndroidStorageEngineOptions options, SQLiteDatabase database,
+               SQLiteDatabase[] readConnections, SQLiteStatementCache statementCache, boolean walEnabled) {
+            this.path = path;
+            this.options = options;
+            this.database = database;
+            this.readConnections = readConnections;
+            this.statementCache = statementCache;
+            this.walEnabled = walEnabled;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        AndroidStorageEngineOptions getOptions() {
+            return options;
+        }
+
+        long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        long getExpiresAt() {
+            return expiresAt;
+        }
+
+        void setExpiresAt(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Estimates the memory held by the handle as the size of its page caches, and remembers
+         * which file it has open.
+         */
+        void estimateMemory() {
+            try {
+                long pageSize = Long.parseLong(queryPragma(database, "PRAGMA page_size"));
+                long cacheSize = Long.parseLong(queryPragma(database, "PRAGMA cache_size"));
+                // a negative cache_size is in KiB
+                long bytes = cacheSize < 0 ? -cacheSize * 1024 : cacheSize * pageSize;
+                int connections = 1 + (readConnections != null ? readConnections.length : 0);
+                estimatedBytes = bytes * connections;
+            } catch (NumberFormatException e) {
+                // too big for any budget, the pool will close it
+                estimatedBytes = Long.MAX_VALUE;
+            }
+
+            fileIdentity = FileIdentity.of(path);
+        }
+
+        /**
+         * Whether path still names the file the handle has open. A file deleted and recreated,
+         * or renamed over, can have the same size and modification time, so this compares the
+         * inode and change time instead, and answers false when they can't be read.
+         */
+        boolean isSameFile() {
+            return fileIdentity != null && fileIdentity.equals(FileIdentity.of(path));
+        }
+
+        void close() {
+            if (readConnections != null) {
+                for (SQLiteDatabase reader : readConnections) {
+                    reader.close();
+                }
+            }
+            if (statementCache != null) {
+                statementCache.close();
+            }
+            database.close();
+            Log.v(Log.TAG_DATABASE, "Closed Android sqlite db %s", path);
+        }
+    }
+
     private class SQLiteCursorWrapper implements Cursor {
         private android.database.Cursor delegate;
 
@@ -230,4 +1019,42 @@ public class AndroidSQLiteStorageEngine implements SQLiteStorageEngine {
             return delegate.isNull(columnIndex);
         }
     }
+
+    private class TimedCursorWrapper extends SQLiteCursorWrapper {
+        private final SQLiteDatabase db;
+        private final String sql;
+        private final String[] selectionArgs;
+        private long elapsedNanos;
+        private int rows;
+        private boolean closed;
+
+        public TimedCursorWrapper(android.database.Cursor delegate, SQLiteDatabase db, String sql,
+                                  String[] selectionArgs, long elapsedNanos) {
+            super(delegate);
+            this.db = db;
+            this.sql = sql;
+            this.selectionArgs = selectionArgs;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @Override
+        public boolean moveToNext() {
+            long start = System.nanoTime();
+            boolean moved = super.moveToNext();
+            elapsedNanos += System.nanoTime() - start;
+            if (moved) {
+                rows++;
+            }
+            return moved;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            if (!closed) {
+                closed = true;
+                recordQuery(db, sql, selectionArgs, elapsedNanos, rows);
+            }
+        }
+    }
 }
@@ -8,8 +8,18 @@ import com.couchbase.lite.storage.SQLiteStorageEngineFactory;
  */
 public class AndroidSQLiteStorageEngineFactory implements SQLiteStorageEngineFactory {
 
+    private final AndroidStorageEngineOptions options;
+
+    public AndroidSQLiteStorageEngineFactory() {
+        this(new AndroidStorageEngineOptions());
+    }
+
+    public AndroidSQLiteStorageEngineFactory(AndroidStorageEngineOptions options) {
+        this.options = options;
+    }
+
     @Override
     public SQLiteStorageEngine createStorageEngine() {
-        return new AndroidSQLiteStorageEngine();
+        return new AndroidSQLiteStorageEngine(options);
     }
 }
@@ -0,0 +1,155 @@
+package com.couchbase.lite.android;
+
+/**
+ * Options used by AndroidSQLiteStorageEngine when opening a database.
+ *
+ * Pass an instance to AndroidContext (or directly to AndroidSQLiteStorageEngineFactory) to
+ * change how the underlying SQLite database is configured.
+ */
+public class AndroidStorageEngineOptions {
+
+    public enum JournalMode {
+        /**
+         * Platform default rollback journal, exclusive transactions.
+         */
+        DEFAULT,
+        /**
+         * Write-Ahead Logging http://sqlite.org/wal.html with non-exclusive transactions,
+         * so readers are not blocked by a writer. Requires API 11 or later.
+         */
+        WAL
+    }
+
+    public static final int DEFAULT_WAL_AUTOCHECKPOINT = 1000;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 50;
+
+    private JournalMode journalMode = JournalMode.DEFAULT;
+    private int walAutoCheckpoint = DEFAULT_WAL_AUTOCHECKPOINT;
+    private int checkpointInterval = 0;
+    private int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+    private StorageTuningProfile tuningProfile = StorageTuningProfile.DEFAULT;
+    private StorageEngineStats stats;
+    private SlowQueryLog slowQueryLog;
+    private int readConnectionPoolSize = 0;
+    private long handlePoolIdleMillis = 0;
+
+    public JournalMode getJournalMode() {
+        return journalMode;
+    }
+
+    public void setJournalMode(JournalMode journalMode) {
+        this.journalMode = journalMode;
+    }
+
+    /**
+     * Number of WAL pages after which SQLite automatically checkpoints (PRAGMA wal_autocheckpoint).
+     * Zero or a negative value turns automatic checkpoints off. Only used in WAL mode.
+     */
+    public int getWalAutoCheckpoint() {
+        return walAutoCheckpoint;
+    }
+
+    public void setWalAutoCheckpoint(int walAutoCheckpoint) {
+        this.walAutoCheckpoint = walAutoCheckpoint;
+    }
+
+    /**
+     * Number of committed top-level transactions after which the engine runs a passive
+     * checkpoint (PRAGMA wal_checkpoint(PASSIVE)). Zero disables it. Only used in WAL mode.
+     */
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Maximum number of compiled statements kept by the engine. Zero disables the cache.
+     */
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    public StorageTuningProfile getTuningProfile() {
+        return tuningProfile;
+    }
+
+    /**
+     * PRAGMAs (page size, cache size, mmap size, synchronous, temp store) applied on open.
+     * See StorageTuningProfile for the built-in profiles.
+     */
+    public void setTuningProfile(StorageTuningProfile tuningProfile) {
+        this.tuningProfile = tuningProfile;
+    }
+
+    public StorageEngineStats getStats() {
+        return stats;
+    }
+
+    /**
+     * When set, engines record the latency of every storage call into the given stats object.
+     * Null (the default) turns recording off.
+     */
+    public void setStats(StorageEngineStats stats) {
+        this.stats = stats;
+    }
+
+    public SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    /**
+     * When set, rawQuery() and execSQL() calls slower than the log's threshold are captured,
+     * with their query plan, into the given log. Null (the default) turns it off.
+     */
+    public void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    /**
+     * Number of extra read-only connections opened alongside the writer. Statements that start
+     * with SELECT, run by threads that are not inside a transaction, are spread across them so
+     * they don't wait for replication writes; the routing looks at the SQL, not at which Database
+     * method runs it. Only used when the writer is in WAL mode. Zero (the default) sends all
+     * queries to the writer.
+     */
+    public int getReadConnectionPoolSize() {
+        return readConnectionPoolSize;
+    }
+
+    public void setReadConnectionPoolSize(int readConnectionPoolSize) {
+        this.readConnectionPoolSize = readConnectionPoolSize;
+    }
+
+    /**
+     * How long a closed database stays open in the background, ready to be reused by the next
+     * open of the same database with these same options. Zero (the default) closes databases
+     * right away. See also AndroidSQLiteStorageEngine.setHandlePoolMemoryBudget().
+     */
+    public long getHandlePoolIdleMillis() {
+        return handlePoolIdleMillis;
+    }
+
+    public void setHandlePoolIdleMillis(long handlePoolIdleMillis) {
+        this.handlePoolIdleMillis = handlePoolIdleMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "AndroidStorageEngineOptions{" +
+                "journalMode=" + journalMode +
+                ", walAutoCheckpoint=" + walAutoCheckpoint +
+                ", checkpointInterval=" + checkpointInterval +
+                ", statementCacheSize=" + statementCacheSize +
+                ", tuningProfile=" + tuningProfile.getName() +
+                ", readConnectionPoolSize=" + readConnectionPoolSize +
+                ", handlePoolIdleMillis=" + handlePoolIdleMillis +
+                '}';
+    }
+}
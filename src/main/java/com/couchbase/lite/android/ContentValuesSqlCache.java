@@ -0,0 +1,139 @@
+package com.couchbase.lite.android;
+
+import com.couchbase.lite.storage.ContentValues;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the INSERT and UPDATE SQL built for each table and column set, so that insert() and
+ * update() can bind ContentValues straight into a cached statement without building SQL or
+ * converting to android.content.ContentValues on every call.
+ */
+class ContentValuesSqlCache {
+
+    // Same as SQLiteDatabase.CONFLICT_VALUES, indexed by conflict algorithm
+    private static final String[] CONFLICT_VALUES = new String[]
+            {"", " OR ROLLBACK ", " OR ABORT ", " OR FAIL ", " OR IGNORE ", " OR REPLACE "};
+
+    // UPDATE WHERE clauses may contain literals, so don't let them grow the cache forever
+    private static final int MAX_SHAPES = 256;
+
+    static final class Shape {
+        final String sql;
+        final String[] columns;
+
+        Shape(String sql, String[] columns) {
+            this.sql = sql;
+            this.columns = columns;
+        }
+    }
+
+    private static final class Key {
+        final String table;
+        final int conflictAlgorithm;
+        final String whereClause;
+        final Set<String> columns;
+        final int hashCode;
+
+        Key(String table, int conflictAlgorithm, String whereClause, Set<String> columns) {
+            this.table = table;
+            this.conflictAlgorithm = conflictAlgorithm;
+            this.whereClause = whereClause;
+            this.columns = columns;
+            int hash = table.hashCode();
+            hash = 31 * hash + conflictAlgorithm;
+            hash = 31 * hash + (whereClause != null ? whereClause.hashCode() : 0);
+            hash = 31 * hash + columns.hashCode();
+            this.hashCode = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hashCode == key.hashCode
+                    && conflictAlgorithm == key.conflictAlgorithm
+                    && table.equals(key.table)
+                    && (whereClause != null ? whereClause.equals(key.whereClause) : key.whereClause == null)
+                    && columns.equals(key.columns);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    // Updates don't take a conflict algorithm; use a value no insert can have
+    private static final int UPDATE = -1;
+
+    private final ConcurrentHashMap<Key, Shape> shapes = new ConcurrentHashMap<Key, Shape>();
+
+    Shape insertShape(String table, ContentValues values, int conflictAlgorithm) {
+        Key key = new Key(table, conflictAlgorithm, null, values.keySet());
+        Shape shape = shapes.get(key);
+        if (shape == null) {
+            String[] columns = values.keySet().toArray(new String[values.size()]);
+            StringBuilder sql = new StringBuilder(120);
+            sql.append("INSERT");
+            sql.append(CONFLICT_VALUES[conflictAlgorithm]);
+            sql.append(" INTO ");
+            sql.append(table);
+            sql.append('(');
+            for (int i = 0; i < columns.length; i++) {
+                sql.append(i > 0 ? "," : "");
+                sql.append(columns[i]);
+            }
+            sql.append(") VALUES (");
+            for (int i = 0; i < columns.length; i++) {
+                sql.append(i > 0 ? ",?" : "?");
+            }
+            sql.append(')');
+            shape = cache(key, new Shape(sql.toString(), columns));
+        }
+        return shape;
+    }
+
+    Shape updateShape(String table, ContentValues values, String whereClause) {
+        Key key = new Key(table, UPDATE, whereClause, values.keySet());
+        Shape shape = shapes.get(key);
+        if (shape == null) {
+            String[] columns = values.keySet().toArray(new String[values.size()]);
+            StringBuilder sql = new StringBuilder(120);
+            sql.append("UPDATE ");
+            sql.append(table);
+            sql.append(" SET ");
+            for (int i = 0; i < columns.length; i++) {
+                sql.append(i > 0 ? "," : "");
+                sql.append(columns[i]);
+                sql.append("=?");
+            }
+            if (whereClause != null && whereClause.length() > 0) {
+                sql.append(" WHERE ");
+                sql.append(whereClause);
+            }
+            shape = cache(key, new Shape(sql.toString(), columns));
+        }
+        return shape;
+    }
+
+    private Shape cache(Key key, Shape shape) {
+        if (shapes.size() < MAX_SHAPES) {
+            // the key holds the live key set of the caller's ContentValues, so store a copy
+            Key storedKey = new Key(key.table, key.conflictAlgorithm, key.whereClause,
+                    new HashSet<String>(key.columns));
+            Shape existing = shapes.putIfAbsent(storedKey, shape);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return shape;
+    }
+}
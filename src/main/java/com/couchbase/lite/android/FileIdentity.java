@@ -0,0 +1,91 @@
+package com.couchbase.lite.android;
+
+import com.couchbase.lite.util.Log;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Device, inode and change time of a file, from stat(2). Unlike its size and modification time,
+ * these tell a file replaced by another one at the same path (deleted and recreated, or renamed
+ * over) apart from the original, even when the inode number is reused.
+ *
+ * stat() is reached through android.system.Os from API 21 and libcore.io.Libcore before that,
+ * by reflection so that it builds against older SDKs. When neither works, of() returns null and
+ * callers have to assume the file changed.
+ */
+final class FileIdentity {
+
+    private static final Method statMethod;
+    private static final Object statTarget;
+
+    static {
+        Method method = null;
+        Object target = null;
+        try {
+            method = Class.forName("android.system.Os").getMethod("stat", String.class);
+        } catch (Exception e) {
+            try {
+                target = Class.forName("libcore.io.Libcore").getField("os").get(null);
+                method = target.getClass().getMethod("stat", String.class);
+            } catch (Exception e2) {
+                Log.w(AndroidSQLiteStorageEngine.TAG, "stat() is not available, pooled handles won't be reused", e2);
+            }
+        }
+        statMethod = method;
+        statTarget = target;
+    }
+
+    private final long device;
+    private final long inode;
+    private final long changeTime;
+
+    private FileIdentity(long device, long inode, long changeTime) {
+        this.device = device;
+        this.inode = inode;
+        this.changeTime = changeTime;
+    }
+
+    /**
+     * Returns the identity of the file at path, or null if it doesn't exist or can't be stat'ed.
+     */
+    static FileIdentity of(String path) {
+        if (statMethod == null) {
+            return null;
+        }
+        try {
+            Object stat = statMethod.invoke(statTarget, path);
+            return new FileIdentity(getLong(stat, "st_dev"), getLong(stat, "st_ino"), getLong(stat, "st_ctime"));
+        } catch (Exception e) {
+            // missing file (ErrnoException) or an unexpected StructStat
+            return null;
+        }
+    }
+
+    private static long getLong(Object stat, String name) throws Exception {
+        Field field = stat.getClass().getField(name);
+        return field.getLong(stat);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FileIdentity)) {
+            return false;
+        }
+        FileIdentity that = (FileIdentity) o;
+        return device == that.device && inode == that.inode && changeTime == that.changeTime;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (inode ^ (inode >>> 32)) * 31 + (int) (changeTime ^ (changeTime >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "FileIdentity{device=" + device + ", inode=" + inode + ", changeTime=" + changeTime + '}';
+    }
+}
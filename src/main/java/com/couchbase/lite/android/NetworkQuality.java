@@ -0,0 +1,149 @@
+package com.couchbase.lite.android;
+
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.telephony.TelephonyManager;
+
+/**
+ * What AndroidNetworkReachabilityManager knows about the active network, and the replication
+ * settings that suit it: big batches and parallel _bulk_get requests on fast unmetered networks,
+ * small batches and no attachment prefetch on slow or metered ones.
+ */
+public class NetworkQuality {
+
+    public enum Transport {
+        NONE, WIFI, ETHERNET, CELLULAR, OTHER
+    }
+
+    public enum BandwidthClass {
+        NONE, LOW, MEDIUM, HIGH
+    }
+
+    public static final NetworkQuality OFFLINE = new NetworkQuality(Transport.NONE, BandwidthClass.NONE, false);
+
+    private final Transport transport;
+    private final BandwidthClass bandwidthClass;
+    private final boolean metered;
+
+    public NetworkQuality(Transport transport, BandwidthClass bandwidthClass, boolean metered) {
+        this.transport = transport;
+        this.bandwidthClass = bandwidthClass;
+        this.metered = metered;
+    }
+
+    /**
+     * @param activeNetwork the active network, or null when there is none
+     * @param metered       ConnectivityManager.isActiveNetworkMetered() where available
+     */
+    public static NetworkQuality fromNetworkInfo(NetworkInfo activeNetwork, boolean metered) {
+        if (activeNetwork == null || !activeNetwork.isConnected()) {
+            return OFFLINE;
+        }
+        switch (activeNetwork.getType()) {
+            case ConnectivityManager.TYPE_WIFI:
+                return new NetworkQuality(Transport.WIFI, BandwidthClass.HIGH, metered);
+            case ConnectivityManager.TYPE_ETHERNET:
+                return new NetworkQuality(Transport.ETHERNET, BandwidthClass.HIGH, metered);
+            case ConnectivityManager.TYPE_MOBILE:
+                return new NetworkQuality(Transport.CELLULAR, cellularBandwidthClass(activeNetwork.getSubtype()), metered);
+            case ConnectivityManager.TYPE_WIMAX:
+                return new NetworkQuality(Transport.OTHER, BandwidthClass.MEDIUM, metered);
+            default:
+                return new NetworkQuality(Transport.OTHER, BandwidthClass.LOW, metered);
+        }
+    }
+
+    private static BandwidthClass cellularBandwidthClass(int networkType) {
+        switch (networkType) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return BandwidthClass.LOW;
+            case TelephonyManager.NETWORK_TYPE_LTE:
+            case TelephonyManager.NETWORK_TYPE_HSPAP:
+                return BandwidthClass.HIGH;
+            default:
+                // 3G, and anything newer than this code
+                return BandwidthClass.MEDIUM;
+        }
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public BandwidthClass getBandwidthClass() {
+        return bandwidthClass;
+    }
+
+    public boolean isMetered() {
+        return metered;
+    }
+
+    public boolean isConnected() {
+        return transport != Transport.NONE;
+    }
+
+    /**
+     * Number of revisions to ask for per _changes request and to insert per transaction.
+     */
+    public int getChangesBatchSize() {
+        switch (bandwidthClass) {
+            case HIGH:
+                return metered ? 100 : 200;
+            case MEDIUM:
+                return 100;
+            default:
+                return 50;
+        }
+    }
+
+    /**
+     * Number of _bulk_get (or individual GET) requests to keep in flight.
+     */
+    public int getBulkGetConcurrency() {
+        switch (bandwidthClass) {
+            case HIGH:
+                return metered ? 2 : 4;
+            case MEDIUM:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Whether attachments should be downloaded ahead of the documents that need them.
+     */
+    public boolean isAttachmentPrefetchEnabled() {
+        return !metered && bandwidthClass == BandwidthClass.HIGH;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NetworkQuality)) {
+            return false;
+        }
+        NetworkQuality that = (NetworkQuality) o;
+        return transport == that.transport && bandwidthClass == that.bandwidthClass && metered == that.metered;
+    }
+
+    @Override
+    public int hashCode() {
+        return (transport.hashCode() * 31 + bandwidthClass.hashCode()) * 31 + (metered ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkQuality{" +
+                "transport=" + transport +
+                ", bandwidthClass=" + bandwidthClass +
+                ", metered=" + metered +
+                '}';
+    }
+}
@@ -0,0 +1,91 @@
+package com.couchbase.lite.android;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Time spent in each phase of opening a database with AndroidSQLiteStorageEngine.
+ *
+ * The native library phases are only present for the first database opened by the process. The
+ * schema check phase is added by the first read of the schema version, which the database does
+ * right after the engine is opened. Reusing a handle from the handle pool is reported with a
+ * single reuse phase.
+ */
+public class OpenTimings {
+
+    public static final String PHASE_LOAD_JSON_COLLATOR = "loadLibrary TDCollateJSON";
+    public static final String PHASE_LOAD_REV_COLLATOR = "loadLibrary RevCollator";
+    public static final String PHASE_OPEN_DATABASE = "openDatabase";
+    public static final String PHASE_REGISTER_COLLATORS = "registerCollators";
+    public static final String PHASE_CONFIGURE = "configure";
+    public static final String PHASE_READ_CONNECTIONS = "openReadConnections";
+    public static final String PHASE_SCHEMA_CHECK = "schemaCheck";
+    public static final String PHASE_REUSE_HANDLE = "reuseHandle";
+
+    private final String path;
+    private final long timestamp;
+    private final List<Phase> phases = new ArrayList<Phase>();
+
+    OpenTimings(String path) {
+        this.path = path;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    synchronized void add(String name, long nanos) {
+        phases.add(new Phase(name, nanos));
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Wall clock time the database was opened, in milliseconds.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the phases in the order they ran.
+     */
+    public synchronized List<Phase> getPhases() {
+        return new ArrayList<Phase>(phases);
+    }
+
+    public synchronized long getTotalNanos() {
+        long total = 0;
+        for (Phase phase : phases) {
+            total += phase.nanos;
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("OpenTimings{path='").append(path).append('\'')
+                .append(", totalMicros=").append(getTotalNanos() / 1000);
+        for (Phase phase : phases) {
+            sb.append(", ").append(phase.name).append('=').append(phase.nanos / 1000);
+        }
+        return sb.append('}').toString();
+    }
+
+    public static class Phase {
+        private final String name;
+        private final long nanos;
+
+        Phase(String name, long nanos) {
+            this.name = name;
+            this.nanos = nanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.couchbase.lite.android;
+
+import com.couchbase.lite.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Open database handles parked by AndroidSQLiteStorageEngine.close(), so that opening the same
+ * database again soon after doesn't have to reopen the file, register the collators and
+ * configure the connection again.
+ *
+ * Handles are closed for real once they have been idle longer than the idle time of their
+ * options, or, oldest first, when the estimated page cache memory of all of them together exceeds
+ * the memory budget.
+ */
+class SQLiteHandlePool {
+
+    private static final SQLiteHandlePool instance = new SQLiteHandlePool();
+
+    private final LinkedList<AndroidSQLiteStorageEngine.Handle> handles = new LinkedList<AndroidSQLiteStorageEngine.Handle>();
+    private long estimatedBytes;
+    private long memoryBudget = AndroidSQLiteStorageEngine.DEFAULT_HANDLE_POOL_MEMORY_BUDGET;
+    private Timer timer;
+
+    static SQLiteHandlePool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Parks the handle, or closes it if it doesn't fit in the memory budget.
+     */
+    synchronized void put(AndroidSQLiteStorageEngine.Handle handle) {
+        AndroidStorageEngineOptions options = handle.getOptions();
+        if (handle.getEstimatedBytes() > memoryBudget) {
+            handle.close();
+            return;
+        }
+
+        evictExpired();
+        handle.setExpiresAt(System.currentTimeMillis() + options.getHandlePoolIdleMillis());
+        handles.addLast(handle);
+        estimatedBytes += handle.getEstimatedBytes();
+        trimToBudget();
+        scheduleEviction(options.getHandlePoolIdleMillis());
+    }
+
+    /**
+     * Returns a parked handle of the database at path opened with the same options, or null.
+     */
+    synchronized AndroidSQLiteStorageEngine.Handle take(String path, AndroidStorageEngineOptions options) {
+        evictExpired();
+        for (Iterator<AndroidSQLiteStorageEngine.Handle> iterator = handles.iterator(); iterator.hasNext(); ) {
+            AndroidSQLiteStorageEngine.Handle handle = iterator.next();
+            if (handle.getPath().equals(path) && handle.getOptions() == options) {
+                iterator.remove();
+                estimatedBytes -= handle.getEstimatedBytes();
+                // the file may have been deleted or replaced since the handle was parked
+                if (!handle.isSameFile()) {
+                    handle.close();
+                    return null;
+                }
+                return handle;
+            }
+        }
+        return null;
+    }
+
+    synchronized int size() {
+        return handles.size();
+    }
+
+    synchronized void closeAll() {
+        while (!handles.isEmpty()) {
+            close(handles.removeFirst());
+        }
+    }
+
+    synchronized void closeAll(String path) {
+        for (Iterator<AndroidSQLiteStorageEngine.Handle> iterator = handles.iterator(); iterator.hasNext(); ) {
+            AndroidSQLiteStorageEngine.Handle handle = iterator.next();
+            if (handle.getPath().equals(path)) {
+                iterator.remove();
+                close(handle);
+            }
+        }
+    }
+
+    synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    synchronized void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        trimToBudget();
+    }
+
+    private void trimToBudget() {
+        while (estimatedBytes > memoryBudget) {
+            close(handles.removeFirst());
+        }
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (Iterator<AndroidSQLiteStorageEngine.Handle> iterator = handles.iterator(); iterator.hasNext(); ) {
+            AndroidSQLiteStorageEngine.Handle handle = iterator.next();
+            if (handle.getExpiresAt() <= now) {
+                iterator.remove();
+                close(handle);
+            }
+        }
+    }
+
+    private void close(AndroidSQLiteStorageEngine.Handle handle) {
+        estimatedBytes -= handle.getEstimatedBytes();
+        handle.close();
+    }
+
+    private void scheduleEviction(long delayMillis) {
+        if (timer == null) {
+            timer = new Timer("SQLiteHandlePool", true);
+        }
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                synchronized (SQLiteHandlePool.this) {
+                    try {
+                        evictExpired();
+                    } catch (RuntimeException e) {
+                        Log.w(AndroidSQLiteStorageEngine.TAG, "Error closing idle database handles", e);
+                    }
+                }
+            }
+        }, delayMillis);
+    }
+}
@@ -0,0 +1,70 @@
+package com.couchbase.lite.android;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of compiled statements, keyed by SQL text.
+ *
+ * Statements are checked out while in use and returned afterwards, so a statement is never shared
+ * between threads and no lock is held while SQLite runs it. If two threads need the same SQL at
+ * the same time, the second one compiles its own statement and the extra copy is closed when it is
+ * returned.
+ */
+class SQLiteStatementCache {
+
+    private final SQLiteDatabase database;
+    private final LinkedHashMap<String, SQLiteStatement> statements;
+    private boolean closed;
+
+    SQLiteStatementCache(SQLiteDatabase database, final int maxSize) {
+        this.database = database;
+        this.statements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+                if (size() > maxSize) {
+                    eldest.getValue().close();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    SQLiteStatement acquire(String sql) {
+        SQLiteStatement statement;
+        synchronized (this) {
+            statement = statements.remove(sql);
+        }
+        if (statement == null) {
+            statement = database.compileStatement(sql);
+        }
+        return statement;
+    }
+
+    void release(String sql, SQLiteStatement statement) {
+        statement.clearBindings();
+        synchronized (this) {
+            if (!closed && !statements.containsKey(sql)) {
+                statements.put(sql, statement);
+                return;
+            }
+        }
+        statement.close();
+    }
+
+    synchronized int size() {
+        return statements.size();
+    }
+
+    synchronized void close() {
+        closed = true;
+        for (SQLiteStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+    }
+}
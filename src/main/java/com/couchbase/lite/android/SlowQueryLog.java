@@ -0,0 +1,151 @@
+package com.couchbase.lite.android;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bounded log of queries that took longer than a threshold, with their EXPLAIN QUERY PLAN output.
+ *
+ * Each distinct SQL shape (see StorageEngineStats.normalize()) is captured only once, the first
+ * time it is slow, so the plan is not re-run for a query that is slow every time. Once the ring
+ * buffer is full the oldest entries are overwritten.
+ *
+ * Set an instance with AndroidStorageEngineOptions.setSlowQueryLog() and keep a reference to read
+ * it with getEntries() or dump().
+ */
+public class SlowQueryLog {
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    // Remember this many shapes (per capacity entry) so a flood of distinct slow SQL can't grow
+    // the set without bound
+    private static final int SHAPES_PER_ENTRY = 16;
+
+    private final long thresholdNanos;
+    private final Entry[] entries;
+    private final Set<String> capturedShapes = new HashSet<String>();
+    private int next;
+    private int size;
+
+    public SlowQueryLog(long thresholdMillis) {
+        this(thresholdMillis, DEFAULT_CAPACITY);
+    }
+
+    public SlowQueryLog(long thresholdMillis, int capacity) {
+        this.thresholdNanos = thresholdMillis * 1000000;
+        this.entries = new Entry[capacity];
+    }
+
+    public long getThresholdMillis() {
+        return thresholdNanos / 1000000;
+    }
+
+    boolean isSlow(long elapsedNanos) {
+        return elapsedNanos >= thresholdNanos;
+    }
+
+    /**
+     * Returns true the first time it is called for a given shape.
+     */
+    synchronized boolean markCaptured(String shape) {
+        if (capturedShapes.size() >= entries.length * SHAPES_PER_ENTRY) {
+            return false;
+        }
+        return capturedShapes.add(shape);
+    }
+
+    synchronized void add(Entry entry) {
+        entries[next] = entry;
+        next = (next + 1) % entries.length;
+        size = Math.min(size + 1, entries.length);
+    }
+
+    /**
+     * Returns the captured slow queries, oldest first.
+     */
+    public synchronized List<Entry> getEntries() {
+        List<Entry> result = new ArrayList<Entry>(size);
+        int start = (next - size + entries.length) % entries.length;
+        for (int i = 0; i < size; i++) {
+            result.add(entries[(start + i) % entries.length]);
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = null;
+        }
+        capturedShapes.clear();
+        next = 0;
+        size = 0;
+    }
+
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Entry entry : getEntries()) {
+            sb.append(entry.getElapsedNanos() / 1000000).append(" ms: ")
+                    .append(entry.getSql()).append(' ')
+                    .append(entry.getArgTypes()).append('\n')
+                    .append(entry.getQueryPlan()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static class Entry {
+        private final long timestamp;
+        private final String sql;
+        private final String argTypes;
+        private final long elapsedNanos;
+        private final String queryPlan;
+
+        Entry(String sql, String argTypes, long elapsedNanos, String queryPlan) {
+            this.timestamp = System.currentTimeMillis();
+            this.sql = sql;
+            this.argTypes = argTypes;
+            this.elapsedNanos = elapsedNanos;
+            this.queryPlan = queryPlan;
+        }
+
+        /**
+         * Wall clock time the query was captured, in milliseconds.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * Types of the bind arguments, e.g. "[String, Long, null]".
+         */
+        public String getArgTypes() {
+            return argTypes;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * EXPLAIN QUERY PLAN output, one line per step.
+         */
+        public String getQueryPlan() {
+            return queryPlan;
+        }
+
+        @Override
+        public String toString() {
+            return "SlowQueryLog.Entry{" +
+                    "sql='" + sql + '\'' +
+                    ", argTypes=" + argTypes +
+                    ", elapsedMillis=" + elapsedNanos / 1000000 +
+                    ", queryPlan='" + queryPlan + '\'' +
+                    '}';
+        }
+    }
+}
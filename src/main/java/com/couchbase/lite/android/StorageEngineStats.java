@@ -0,0 +1,321 @@
+package com.couchbase.lite.android;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms of the SQL run by AndroidSQLiteStorageEngine, keyed by normalized SQL text
+ * (literals replaced by '?', whitespace collapsed).
+ *
+ * Create one, set it with AndroidStorageEngineOptions.setStats() and keep a reference to poll it
+ * with getSnapshot() or dump(). Every engine opened with those options records into it. When no
+ * stats object is set the engine does not time anything.
+ */
+public class StorageEngineStats {
+
+    // Bucket i holds calls that took [2^i, 2^(i+1)) microseconds, bucket 0 also holds < 1us
+    public static final int NUMBER_OF_BUCKETS = 32;
+
+    // Normalized SQL is cached per distinct SQL string, up to this many strings
+    private static final int MAX_CACHED_SQL = 1024;
+
+    private static final int MAX_OPEN_TIMINGS = 16;
+
+    // replaced as a whole by reset(), so a record() racing with it can't cache a histogram of
+    // the old shape map in the new SQL map
+    private volatile Histograms histograms = new Histograms();
+    private final LinkedList<OpenTimings> openTimings = new LinkedList<OpenTimings>();
+
+    /**
+     * Records one call.
+     *
+     * @param rows number of rows returned by a cursor, or -1 if the call doesn't return rows
+     */
+    public void record(String sql, long elapsedNanos, int rows) {
+        Histograms histograms = this.histograms;
+        Histogram histogram = histograms.bySql.get(sql);
+        if (histogram == null) {
+            histogram = histograms.forShape(normalize(sql));
+            if (histograms.bySql.size() < MAX_CACHED_SQL) {
+                histograms.bySql.put(sql, histogram);
+            }
+        }
+        histogram.record(elapsedNanos, rows);
+    }
+
+    void recordOpen(OpenTimings timings) {
+        synchronized (openTimings) {
+            openTimings.addLast(timings);
+            if (openTimings.size() > MAX_OPEN_TIMINGS) {
+                openTimings.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * Returns the phase timings of the most recent database opens, oldest first.
+     */
+    public List<OpenTimings> getOpenTimings() {
+        synchronized (openTimings) {
+            return new ArrayList<OpenTimings>(openTimings);
+        }
+    }
+
+    /**
+     * Returns the stats of every SQL shape seen so far, slowest in total first.
+     */
+    public List<SqlStats> getSnapshot() {
+        ConcurrentHashMap<String, Histogram> byShape = histograms.byShape;
+        List<SqlStats> snapshot = new ArrayList<SqlStats>(byShape.size());
+        for (Histogram histogram : byShape.values()) {
+            snapshot.add(histogram.snapshot());
+        }
+        Collections.sort(snapshot, new Comparator<SqlStats>() {
+            @Override
+            public int compare(SqlStats lhs, SqlStats rhs) {
+                return lhs.totalNanos < rhs.totalNanos ? 1 : (lhs.totalNanos > rhs.totalNanos ? -1 : 0);
+            }
+        });
+        return snapshot;
+    }
+
+    /**
+     * Returns a human readable table of the current snapshot, one line per SQL shape.
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("count\ttotal ms\tavg us\tp50 us\tp90 us\tp99 us\tmax us\trows\tsql\n");
+        for (SqlStats stats : getSnapshot()) {
+            sb.append(stats.count).append('\t')
+                    .append(stats.totalNanos / 1000000).append('\t')
+                    .append(stats.getAverageMicros()).append('\t')
+                    .append(stats.getPercentileMicros(50)).append('\t')
+                    .append(stats.getPercentileMicros(90)).append('\t')
+                    .append(stats.getPercentileMicros(99)).append('\t')
+                    .append(stats.maxNanos / 1000).append('\t')
+                    .append(stats.rows).append('\t')
+                    .append(stats.sql).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public void reset() {
+        histograms = new Histograms();
+        synchronized (openTimings) {
+            openTimings.clear();
+        }
+    }
+
+    /**
+     * Replaces numeric and string literals with '?', collapses lists of parameters such as
+     * IN (?,?,?) to (?) and collapses whitespace, so that SQL built with inlined values is counted
+     * as one shape.
+     */
+    static String normalize(String sql) {
+        int length = sql.length();
+        StringBuilder sb = new StringBuilder(length);
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                while (i < length && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                continue;
+            }
+            if (c == '\'') {
+                i++;
+                while (i < length) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+                sb.append('?');
+                continue;
+            }
+            if (Character.isDigit(c) && !isIdentifierChar(sb)) {
+                while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                sb.append('?');
+                continue;
+            }
+            sb.append(c);
+            i++;
+        }
+        int end = sb.length();
+        while (end > 0 && sb.charAt(end - 1) == ' ') {
+            end--;
+        }
+        sb.setLength(end);
+        return sb.toString().replaceAll("\\(\\?( ?, ?\\?)+\\)", "(?)");
+    }
+
+    private static boolean isIdentifierChar(StringBuilder sb) {
+        if (sb.length() == 0) {
+            return false;
+        }
+        char previous = sb.charAt(sb.length() - 1);
+        return Character.isLetterOrDigit(previous) || previous == '_';
+    }
+
+    static int bucketFor(long elapsedNanos) {
+        long micros = elapsedNanos / 1000;
+        int bucket = 63 - Long.numberOfLeadingZeros(micros);
+        return Math.max(0, Math.min(NUMBER_OF_BUCKETS - 1, bucket));
+    }
+
+    private static class Histograms {
+        final ConcurrentHashMap<String, Histogram> bySql = new ConcurrentHashMap<String, Histogram>();
+        final ConcurrentHashMap<String, Histogram> byShape = new ConcurrentHashMap<String, Histogram>();
+
+        Histogram forShape(String shape) {
+            Histogram histogram = byShape.get(shape);
+            if (histogram == null) {
+                Histogram newHistogram = new Histogram(shape);
+                histogram = byShape.putIfAbsent(shape, newHistogram);
+                if (histogram == null) {
+                    histogram = newHistogram;
+                }
+            }
+            return histogram;
+        }
+    }
+
+    private static class Histogram {
+        private final String sql;
+        private final AtomicLongArray buckets = new AtomicLongArray(NUMBER_OF_BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+
+        Histogram(String sql) {
+            this.sql = sql;
+        }
+
+        void record(long elapsedNanos, int rowCount) {
+            buckets.incrementAndGet(bucketFor(elapsedNanos));
+            count.incrementAndGet();
+            totalNanos.addAndGet(elapsedNanos);
+            if (rowCount > 0) {
+                rows.addAndGet(rowCount);
+            }
+            long max;
+            while (elapsedNanos > (max = maxNanos.get())) {
+                if (maxNanos.compareAndSet(max, elapsedNanos)) {
+                    break;
+                }
+            }
+        }
+
+        SqlStats snapshot() {
+            long[] bucketCounts = new long[NUMBER_OF_BUCKETS];
+            for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+                bucketCounts[i] = buckets.get(i);
+            }
+            return new SqlStats(sql, count.get(), totalNanos.get(), maxNanos.get(), rows.get(), bucketCounts);
+        }
+    }
+
+    /**
+     * Immutable stats of one SQL shape.
+     */
+    public static class SqlStats {
+        private final String sql;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long rows;
+        private final long[] buckets;
+
+        SqlStats(String sql, long count, long totalNanos, long maxNanos, long rows, long[] buckets) {
+            this.sql = sql;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.rows = rows;
+            this.buckets = buckets;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * Total number of rows returned by cursors for this SQL.
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        public long[] getBuckets() {
+            return buckets.clone();
+        }
+
+        public long getAverageMicros() {
+            return count == 0 ? 0 : totalNanos / count / 1000;
+        }
+
+        /**
+         * Returns the upper bound, in microseconds, of the bucket holding the given percentile.
+         */
+        public long getPercentileMicros(double percentile) {
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return 1L << (i + 1);
+                }
+            }
+            return 1L << buckets.length;
+        }
+
+        @Override
+        public String toString() {
+            return "SqlStats{" +
+                    "sql='" + sql + '\'' +
+                    ", count=" + count +
+                    ", avgMicros=" + getAverageMicros() +
+                    ", p99Micros=" + getPercentileMicros(99) +
+                    ", maxMicros=" + maxNanos / 1000 +
+                    ", rows=" + rows +
+                    '}';
+        }
+    }
+}
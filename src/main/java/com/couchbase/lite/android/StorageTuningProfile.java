@@ -0,0 +1,128 @@
+package com.couchbase.lite.android;
+
+/**
+ * A named set of SQLite PRAGMAs applied by AndroidSQLiteStorageEngine when it opens a database.
+ *
+ * Settings left at their "unset" value (null, or -1 for page size) keep the platform default.
+ * page_size only takes effect on a new database, and mmap_size is ignored by SQLite versions
+ * older than 3.7.17 (Android 5.0). synchronous=NORMAL, which the built-in profiles use, is only
+ * applied when the database is in WAL mode (see AndroidStorageEngineOptions.setJournalMode()),
+ * and FULL is kept otherwise, since NORMAL without WAL can lose or corrupt committed data on
+ * power loss.
+ */
+public class StorageTuningProfile {
+
+    /**
+     * Platform defaults, no PRAGMAs are issued.
+     */
+    public static final StorageTuningProfile DEFAULT =
+            new StorageTuningProfile("default", -1, null, null, null, null);
+
+    /**
+     * For initial sync and other large writes: big page cache, temp tables in memory.
+     */
+    public static final StorageTuningProfile BULK_LOAD =
+            new StorageTuningProfile("bulk-load", 4096, -8192, 0L, "NORMAL", "MEMORY");
+
+    /**
+     * For databases that are mostly queried: memory-mapped reads and a medium page cache.
+     */
+    public static final StorageTuningProfile READ_MOSTLY =
+            new StorageTuningProfile("read-mostly", 4096, -4096, 64L * 1024 * 1024, "NORMAL", "MEMORY");
+
+    /**
+     * For low-end devices: small page cache, no memory mapping, temp tables on disk.
+     */
+    public static final StorageTuningProfile LOW_MEMORY =
+            new StorageTuningProfile("low-memory", 4096, -512, 0L, "NORMAL", "FILE");
+
+    private static final StorageTuningProfile[] NAMED_PROFILES =
+            new StorageTuningProfile[] { DEFAULT, BULK_LOAD, READ_MOSTLY, LOW_MEMORY };
+
+    private final String name;
+    private final int pageSize;
+    private final Integer cacheSize;
+    private final Long mmapSize;
+    private final String synchronous;
+    private final String tempStore;
+
+    /**
+     * @param pageSize    PRAGMA page_size in bytes, or -1
+     * @param cacheSize   PRAGMA cache_size; positive is a number of pages, negative is KiB
+     * @param mmapSize    PRAGMA mmap_size in bytes, 0 turns memory mapping off
+     * @param synchronous PRAGMA synchronous: OFF, NORMAL or FULL
+     * @param tempStore   PRAGMA temp_store: DEFAULT, FILE or MEMORY
+     */
+    public StorageTuningProfile(String name, int pageSize, Integer cacheSize, Long mmapSize,
+                                String synchronous, String tempStore) {
+        checkValue("synchronous", synchronous, "OFF", "NORMAL", "FULL");
+        checkValue("temp_store", tempStore, "DEFAULT", "FILE", "MEMORY");
+        this.name = name;
+        this.pageSize = pageSize;
+        this.cacheSize = cacheSize;
+        this.mmapSize = mmapSize;
+        this.synchronous = synchronous;
+        this.tempStore = tempStore;
+    }
+
+    /**
+     * Returns the built-in profile with the given name ("default", "bulk-load", "read-mostly" or
+     * "low-memory"), or null if there is none.
+     */
+    public static StorageTuningProfile forName(String name) {
+        for (StorageTuningProfile profile : NAMED_PROFILES) {
+            if (profile.name.equalsIgnoreCase(name)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    private static void checkValue(String pragma, String value, String... allowed) {
+        if (value == null) {
+            return;
+        }
+        for (String allowedValue : allowed) {
+            if (allowedValue.equalsIgnoreCase(value)) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Invalid " + pragma + " value: " + value);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public Integer getCacheSize() {
+        return cacheSize;
+    }
+
+    public Long getMmapSize() {
+        return mmapSize;
+    }
+
+    public String getSynchronous() {
+        return synchronous;
+    }
+
+    public String getTempStore() {
+        return tempStore;
+    }
+
+    @Override
+    public String toString() {
+        return "StorageTuningProfile{" +
+                "name='" + name + '\'' +
+                ", pageSize=" + pageSize +
+                ", cacheSize=" + cacheSize +
+                ", mmapSize=" + mmapSize +
+                ", synchronous=" + synchronous +
+                ", tempStore=" + tempStore +
+                '}';
+    }
+}
@@ -0,0 +1,275 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.util;
+
+import android.util.Log;
+
+/**
+ * Logger that hands messages to another Logger on a background thread, so that the thread doing
+ * the logging never waits on logcat.
+ *
+ * Messages go into a ring buffer of entries allocated up front. When the background thread falls
+ * behind and the ring is full, the oldest waiting messages are overwritten and counted as
+ * dropped. Messages below the level are dropped before they are queued.
+ *
+ * Install with Log.setLogger(new AsyncLogger(new SimpleLogger(), 1024)).
+ */
+public class AsyncLogger implements Logger {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int W_THROWABLE = -1;
+
+    private final Logger delegate;
+    private final Entry[] entries;
+    private final Thread thread;
+    private volatile int level = Log.VERBOSE;
+    private int head;
+    private int count;
+    private long dropped;
+    private boolean writing;
+    private boolean closed;
+
+    public AsyncLogger(Logger delegate) {
+        this(delegate, DEFAULT_CAPACITY);
+    }
+
+    public AsyncLogger(Logger delegate, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.delegate = delegate;
+        this.entries = new Entry[capacity];
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = new Entry();
+        }
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "AsyncLogger");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Messages below this android.util.Log level are dropped without being queued.
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    /**
+     * Number of messages overwritten before the background thread got to them.
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Waits until every message queued so far has been handed to the delegate.
+     */
+    public synchronized void flush() throws InterruptedException {
+        while ((count > 0 || writing) && thread.isAlive()) {
+            wait();
+        }
+    }
+
+    /**
+     * Hands the remaining messages to the delegate and stops the background thread.
+     */
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        thread.join();
+    }
+
+    @Override
+    public void v(String tag, String msg) {
+        enqueue(Log.VERBOSE, tag, msg, null);
+    }
+
+    @Override
+    public void v(String tag, String msg, Throwable tr) {
+        enqueue(Log.VERBOSE, tag, msg, tr);
+    }
+
+    @Override
+    public void d(String tag, String msg) {
+        enqueue(Log.DEBUG, tag, msg, null);
+    }
+
+    @Override
+    public void d(String tag, String msg, Throwable tr) {
+        enqueue(Log.DEBUG, tag, msg, tr);
+    }
+
+    @Override
+    public void i(String tag, String msg) {
+        enqueue(Log.INFO, tag, msg, null);
+    }
+
+    @Override
+    public void i(String tag, String msg, Throwable tr) {
+        enqueue(Log.INFO, tag, msg, tr);
+    }
+
+    @Override
+    public void w(String tag, String msg) {
+        enqueue(Log.WARN, tag, msg, null);
+    }
+
+    @Override
+    public void w(String tag, Throwable tr) {
+        enqueue(W_THROWABLE, tag, null, tr);
+    }
+
+    @Override
+    public void w(String tag, String msg, Throwable tr) {
+        enqueue(Log.WARN, tag, msg, tr);
+    }
+
+    @Override
+    public void e(String tag, String msg) {
+        enqueue(Log.ERROR, tag, msg, null);
+    }
+
+    @Override
+    public void e(String tag, String msg, Throwable tr) {
+        enqueue(Log.ERROR, tag, msg, tr);
+    }
+
+    private void enqueue(int priority, String tag, String msg, Throwable tr) {
+        if ((priority == W_THROWABLE ? Log.WARN : priority) < level) {
+            return;
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (count == entries.length) {
+                // overwrite the oldest waiting message
+                head = (head + 1) % entries.length;
+                count--;
+                dropped++;
+            }
+            Entry entry = entries[(head + count) % entries.length];
+            entry.priority = priority;
+            entry.tag = tag;
+            entry.msg = msg;
+            entry.tr = tr;
+            count++;
+            if (count == 1) {
+                notifyAll();
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            int priority;
+            String tag;
+            String msg;
+            Throwable tr;
+            synchronized (this) {
+                writing = false;
+                while (count == 0) {
+                    notifyAll();
+                    if (closed) {
+                        return;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                Entry entry = entries[head];
+                priority = entry.priority;
+                tag = entry.tag;
+                msg = entry.msg;
+                tr = entry.tr;
+                entry.tag = null;
+                entry.msg = null;
+                entry.tr = null;
+                head = (head + 1) % entries.length;
+                count--;
+                writing = true;
+            }
+            try {
+                write(priority, tag, msg, tr);
+            } catch (RuntimeException e) {
+                Log.e(com.couchbase.lite.util.Log.TAG, "AsyncLogger delegate failed", e);
+            }
+        }
+    }
+
+    private void write(int priority, String tag, String msg, Throwable tr) {
+        switch (priority) {
+            case Log.VERBOSE:
+                if (tr == null) {
+                    delegate.v(tag, msg);
+                } else {
+                    delegate.v(tag, msg, tr);
+                }
+                break;
+            case Log.DEBUG:
+                if (tr == null) {
+                    delegate.d(tag, msg);
+                } else {
+                    delegate.d(tag, msg, tr);
+                }
+                break;
+            case Log.INFO:
+                if (tr == null) {
+                    delegate.i(tag, msg);
+                } else {
+                    delegate.i(tag, msg, tr);
+                }
+                break;
+            case W_THROWABLE:
+                delegate.w(tag, tr);
+                break;
+            case Log.WARN:
+                if (tr == null) {
+                    delegate.w(tag, msg);
+                } else {
+                    delegate.w(tag, msg, tr);
+                }
+                break;
+            default:
+                if (tr == null) {
+                    delegate.e(tag, msg);
+                } else {
+                    delegate.e(tag, msg, tr);
+                }
+                break;
+        }
+    }
+
+    private static class Entry {
+        int priority;
+        String tag;
+        String msg;
+        Throwable tr;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.util;
+
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.QueryEnumerator;
+import com.couchbase.lite.QueryRow;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the rows of a large query a page at a time, so that only one page of QueryRows
+ * is in memory however many rows the query returns.
+ *
+ * Each page is the query run again with its limit set to the page size, starting at the key and
+ * document of the last row of the previous page and skipping the rows already seen. The query is
+ * modified as it goes, so don't share it. Queries with explicit keys can't be continued this way
+ * and are rejected, and so are queries with a post filter: the rows it drops aren't counted by the
+ * skip that continues a page, so identical rows around a page boundary would be skipped or
+ * returned twice. Rows added or removed between pages show up or not as they would for a query
+ * run at that point. A page with fewer rows than asked for is the last one.
+ */
+public class PagedQueryEnumerator implements Iterator<QueryRow>, Iterable<QueryRow> {
+
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    private final Query query;
+    private final int pageSize;
+    private int remaining;
+    private QueryEnumerator page;
+    private int pageIndex;
+    private boolean lastPage;
+    private QueryRow continuedFrom;
+    private int skipped;
+
+    public PagedQueryEnumerator(Query query) {
+        this(query, DEFAULT_PAGE_SIZE);
+    }
+
+    public PagedQueryEnumerator(Query query, int pageSize) {
+        if (query.getKeys() != null) {
+            throw new IllegalArgumentException("Queries with explicit keys can't be paged");
+        }
+        if (query.getPostFilter() != null) {
+            throw new IllegalArgumentException("Queries with a post filter can't be paged");
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        this.query = query;
+        this.pageSize = pageSize;
+        this.remaining = query.getLimit() > 0 ? query.getLimit() : Integer.MAX_VALUE;
+    }
+
+    @Override
+    public Iterator<QueryRow> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (page != null && pageIndex < page.getCount()) {
+            return true;
+        }
+        if (lastPage) {
+            return false;
+        }
+        try {
+            nextPage();
+        } catch (CouchbaseLiteException e) {
+            throw new RuntimeException(e);
+        }
+        return pageIndex < page.getCount();
+    }
+
+    @Override
+    public QueryRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.getRow(pageIndex++);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private void nextPage() throws CouchbaseLiteException {
+        if (page != null && page.getCount() > 0) {
+            // continue from the last row, skipping it and any identical rows before it
+            QueryRow last = page.getRow(page.getCount() - 1);
+            int seen = 1;
+            int i = page.getCount() - 2;
+            for (; i >= 0 && isSamePosition(page.getRow(i), last); i--) {
+                seen++;
+            }
+            if (i < 0 && continuedFrom != null && isSamePosition(continuedFrom, last)) {
+                // the whole page was more of the rows skipped last time
+                seen += skipped;
+            }
+            query.setStartKey(last.getKey());
+            query.setStartKeyDocId(last.getSourceDocumentId());
+            query.setSkip(seen);
+            continuedFrom = last;
+            skipped = seen;
+        }
+
+        int limit = Math.min(pageSize, remaining);
+        query.setLimit(limit);
+        page = query.run();
+        pageIndex = 0;
+        remaining -= page.getCount();
+        lastPage = page.getCount() < limit || remaining <= 0;
+    }
+
+    private static boolean isSamePosition(QueryRow a, QueryRow b) {
+        Object aKey = a.getKey();
+        String aDocId = a.getSourceDocumentId();
+        return (aKey == null ? b.getKey() == null : aKey.equals(b.getKey()))
+                && (aDocId == null ? b.getSourceDocumentId() == null : aDocId.equals(b.getSourceDocumentId()));
+    }
+}
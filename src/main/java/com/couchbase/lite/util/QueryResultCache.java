@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.util;
+
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.QueryEnumerator;
+import com.couchbase.lite.QueryRow;
+import com.couchbase.lite.View;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Opt-in cache of the results of queries on one view. Running a query through the cache with the
+ * same options as an earlier one returns the earlier rows without running SQL again, as long as
+ * the view's index hasn't moved on in between.
+ *
+ * Results are keyed by the query options: keys, key range and doc ID range, inclusive end, limit,
+ * skip, descending, group level, prefix match level, map only, prefetch, index update mode and
+ * all-docs mode. Post filters are not part of the key, so don't run queries with one through the
+ * cache. Every result of the same query shares the same QueryRow objects, so treat them as
+ * read-only: don't modify their values or the maps and lists they return. The cache is bounded by
+ * the total number of cached rows; the least recently used results are evicted first, and results
+ * bigger than the bound aren't cached at all. All cached results are dropped as soon as the
+ * sequence they were computed at is no longer current: the database's last sequence for queries
+ * that update the index first, the view's last indexed sequence otherwise.
+ */
+public class QueryResultCache {
+
+    public static final int DEFAULT_MAX_ROWS = 10000;
+
+    private final View view;
+    private final int maxRows;
+    private final LinkedHashMap<List<Object>, Entry> entries = new LinkedHashMap<List<Object>, Entry>(16, 0.75f, true);
+    private int cachedRows;
+    private long sequence = -1;
+    private long hitCount;
+    private long missCount;
+
+    public QueryResultCache(View view) {
+        this(view, DEFAULT_MAX_ROWS);
+    }
+
+    public QueryResultCache(View view, int maxRows) {
+        this.view = view;
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * Returns the cached result of a query with the same options, or runs the query and caches
+     * its result. The query must have been created by this cache's view.
+     */
+    public QueryEnumerator run(Query query) throws CouchbaseLiteException {
+        List<Object> key = getKey(query);
+        long currentSequence = getCurrentSequence(query);
+        synchronized (this) {
+            if (currentSequence != sequence) {
+                clear();
+                sequence = currentSequence;
+            }
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hitCount++;
+                return new QueryEnumerator(view.getDatabase(), entry.rows, entry.sequenceNumber);
+            }
+            missCount++;
+        }
+
+        QueryEnumerator result = query.run();
+        List<QueryRow> rows = new ArrayList<QueryRow>(result.getCount());
+        for (int i = 0; i < result.getCount(); i++) {
+            rows.add(result.getRow(i));
+        }
+        synchronized (this) {
+            // don't cache a result the index has already moved past
+            if (rows.size() <= maxRows && currentSequence == sequence) {
+                Entry previous = entries.put(key, new Entry(rows, result.getSequenceNumber()));
+                if (previous != null) {
+                    cachedRows -= previous.rows.size();
+                }
+                cachedRows += rows.size();
+                evict();
+            }
+        }
+        return new QueryEnumerator(view.getDatabase(), rows, result.getSequenceNumber());
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized int getCachedRowCount() {
+        return cachedRows;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        cachedRows = 0;
+    }
+
+    private long getCurrentSequence(Query query) {
+        if (query.getIndexUpdateMode() == Query.IndexUpdateMode.BEFORE) {
+            return view.getDatabase().getLastSequenceNumber();
+        }
+        return view.getLastSequenceIndexed();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<List<Object>, Entry>> iterator = entries.entrySet().iterator();
+        while (cachedRows > maxRows && iterator.hasNext()) {
+            cachedRows -= iterator.next().getValue().rows.size();
+            iterator.remove();
+        }
+    }
+
+    private static List<Object> getKey(Query query) {
+        return Arrays.asList(
+                query.getKeys(),
+                query.getStartKey(),
+                query.getEndKey(),
+                query.getStartKeyDocId(),
+                query.getEndKeyDocId(),
+                query.isInclusiveEnd(),
+                query.getLimit(),
+                query.getSkip(),
+                query.isDescending(),
+                query.getGroupLevel(),
+                query.getPrefixMatchLevel(),
+                query.isMapOnly(),
+                query.shouldPrefetch(),
+                query.getIndexUpdateMode(),
+                query.getAllDocsMode());
+    }
+
+    private static class Entry {
+        private final List<QueryRow> rows;
+        private final long sequenceNumber;
+
+        Entry(List<QueryRow> rows, long sequenceNumber) {
+            this.rows = rows;
+            this.sequenceNumber = sequenceNumber;
+        }
+    }
+}
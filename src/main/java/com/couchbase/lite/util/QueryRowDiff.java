@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.util;
+
+import com.couchbase.lite.LiveQuery;
+import com.couchbase.lite.QueryEnumerator;
+import com.couchbase.lite.QueryRow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rows inserted, removed and updated between two results of the same query, so that a LiveQuery
+ * listener can patch what it shows instead of rebuilding it from scratch.
+ *
+ * A row is identified by the document that emitted it and its key; a document emitting the same
+ * key more than once gives one row per emit. A row is updated when its value or the sequence of
+ * its document changed. Reduce and group rows have no document, so they are identified by key
+ * alone and show up as updated when their reduced value changes.
+ */
+public class QueryRowDiff {
+
+    /**
+     * Receives the rows of a LiveQuery together with how they differ from the previous rows.
+     */
+    public interface Listener {
+        void rowsChanged(QueryEnumerator rows, QueryRowDiff diff);
+    }
+
+    private final List<QueryRow> inserted;
+    private final List<QueryRow> removed;
+    private final List<QueryRow> updated;
+
+    private QueryRowDiff(List<QueryRow> inserted, List<QueryRow> removed, List<QueryRow> updated) {
+        this.inserted = inserted;
+        this.removed = removed;
+        this.updated = updated;
+    }
+
+    /**
+     * Returns a LiveQuery.ChangeListener that passes each new result to listener along with its
+     * difference from the one before. The first result is reported as all rows inserted.
+     */
+    public static LiveQuery.ChangeListener trackChanges(final Listener listener) {
+        return new LiveQuery.ChangeListener() {
+            private QueryEnumerator previous;
+
+            @Override
+            public void changed(LiveQuery.ChangeEvent event) {
+                QueryEnumerator rows = event.getRows();
+                if (rows == null) {
+                    return;
+                }
+                QueryRowDiff diff;
+                synchronized (this) {
+                    diff = compute(previous, rows);
+                    previous = rows;
+                }
+                if (!diff.isEmpty()) {
+                    listener.rowsChanged(rows, diff);
+                }
+            }
+        };
+    }
+
+    /**
+     * @param previous the earlier result, or null if there is none
+     * @param current  the later result
+     */
+    public static QueryRowDiff compute(QueryEnumerator previous, QueryEnumerator current) {
+        Map<List<Object>, QueryRow> previousRows = index(previous);
+        List<QueryRow> inserted = new ArrayList<QueryRow>();
+        List<QueryRow> updated = new ArrayList<QueryRow>();
+
+        Map<List<Object>, Integer> occurrences = new HashMap<List<Object>, Integer>();
+        for (int i = 0; i < current.getCount(); i++) {
+            QueryRow row = current.getRow(i);
+            QueryRow previousRow = previousRows.remove(getIdentity(row, occurrences));
+            if (previousRow == null) {
+                inserted.add(row);
+            } else if (previousRow.getSequenceNumber() != row.getSequenceNumber()
+                    || !equal(previousRow.getValue(), row.getValue())) {
+                updated.add(row);
+            }
+        }
+        List<QueryRow> removed = new ArrayList<QueryRow>(previousRows.values());
+        return new QueryRowDiff(inserted, removed, updated);
+    }
+
+    public List<QueryRow> getInserted() {
+        return Collections.unmodifiableList(inserted);
+    }
+
+    public List<QueryRow> getRemoved() {
+        return Collections.unmodifiableList(removed);
+    }
+
+    public List<QueryRow> getUpdated() {
+        return Collections.unmodifiableList(updated);
+    }
+
+    public boolean isEmpty() {
+        return inserted.isEmpty() && removed.isEmpty() && updated.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "QueryRowDiff{inserted=" + inserted.size() +
+                ", removed=" + removed.size() +
+                ", updated=" + updated.size() +
+                '}';
+    }
+
+    private static Map<List<Object>, QueryRow> index(QueryEnumerator rows) {
+        // keep the rows in order so that removed rows come out in query order
+        Map<List<Object>, QueryRow> index = new LinkedHashMap<List<Object>, QueryRow>();
+        if (rows != null) {
+            Map<List<Object>, Integer> occurrences = new HashMap<List<Object>, Integer>();
+            for (int i = 0; i < rows.getCount(); i++) {
+                QueryRow row = rows.getRow(i);
+                index.put(getIdentity(row, occurrences), row);
+            }
+        }
+        return index;
+    }
+
+    private static List<Object> getIdentity(QueryRow row, Map<List<Object>, Integer> occurrences) {
+        List<Object> emit = Arrays.asList(row.getSourceDocumentId(), row.getKey());
+        Integer occurrence = occurrences.get(emit);
+        occurrence = occurrence == null ? 0 : occurrence + 1;
+        occurrences.put(emit, occurrence);
+        return Arrays.asList(row.getSourceDocumentId(), row.getKey(), occurrence);
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.util;
+
+import com.couchbase.lite.AsyncTask;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.QueryEnumerator;
+import com.couchbase.lite.replicator.Replication;
+
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Alternative to LiveQuery for queries over data that changes in bursts, like a large pull.
+ *
+ * Database changes are coalesced: the query re-runs once no change has come in for the minimum
+ * update interval, so a burst costs one run after its last change. A burst that never pauses is
+ * still picked up MAX_DEFERRAL_INTERVALS update intervals after its first change, and runs are
+ * always at least an interval apart. Listeners hear about every run. While one of the
+ * replications passed to pauseDuring() is running with changes still to process, runs are put
+ * off until it catches up, within the same MAX_DEFERRAL_INTERVALS limit. Like LiveQuery, the query
+ * runs on the database's background thread and listeners are called there. Results of a run that
+ * was still going when the query was stopped are dropped.
+ */
+public class RateLimitedQuery implements Database.ChangeListener {
+
+    public static final long DEFAULT_MIN_UPDATE_INTERVAL_MILLIS = 500;
+    public static final int MAX_DEFERRAL_INTERVALS = 10;
+
+    public interface Listener {
+        void rowsChanged(QueryEnumerator rows);
+    }
+
+    private final Query query;
+    private final Database database;
+    private final long minUpdateIntervalMillis;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private final List<Replication> replications = new CopyOnWriteArrayList<Replication>();
+    private Timer timer;
+    private boolean started;
+    // bumped by stop(), so that timer tasks and runs from before it are ignored
+    private int generation;
+    private boolean scheduled;
+    private boolean running;
+    private boolean dirty;
+    private long pendingSince;
+    private long dueAt;
+    private long runCount;
+
+    public RateLimitedQuery(Query query) {
+        this(query, DEFAULT_MIN_UPDATE_INTERVAL_MILLIS);
+    }
+
+    public RateLimitedQuery(Query query, long minUpdateIntervalMillis) {
+        this.query = query;
+        this.database = query.getDatabase();
+        this.minUpdateIntervalMillis = minUpdateIntervalMillis;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Puts off runs while the replication is running and has changes left to process.
+     */
+    public void pauseDuring(Replication replication) {
+        replications.add(replication);
+    }
+
+    /**
+     * Runs the query now and again after every burst of database changes.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        timer = new Timer("RateLimitedQuery", true);
+        database.addChangeListener(this);
+        dirty = true;
+        pendingSince = System.currentTimeMillis();
+        dueAt = pendingSince;
+        schedule(0);
+    }
+
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        generation++;
+        database.removeChangeListener(this);
+        timer.cancel();
+        timer = null;
+        scheduled = false;
+        running = false;
+        dirty = false;
+    }
+
+    /**
+     * Number of times the query has run since it was created.
+     */
+    public synchronized long getRunCount() {
+        return runCount;
+    }
+
+    @Override
+    public synchronized void changed(Database.ChangeEvent event) {
+        if (!started) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!dirty) {
+            dirty = true;
+            pendingSince = now;
+        }
+        // every change pushes the run back, up to the deferral limit
+        dueAt = Math.min(now + minUpdateIntervalMillis, getDeadline());
+        if (!scheduled && !running) {
+            schedule(Math.max(0, dueAt - now));
+        }
+    }
+
+    private long getDeadline() {
+        return pendingSince + MAX_DEFERRAL_INTERVALS * minUpdateIntervalMillis;
+    }
+
+    private void schedule(long delayMillis) {
+        scheduled = true;
+        final int scheduledGeneration = generation;
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                fire(scheduledGeneration);
+            }
+        }, delayMillis);
+    }
+
+    private synchronized void fire(int scheduledGeneration) {
+        if (scheduledGeneration != generation) {
+            return;
+        }
+        scheduled = false;
+        if (!started || !dirty) {
+            return;
+        }
+        // changes came in since this was scheduled, wait for them to settle
+        long now = System.currentTimeMillis();
+        if (now < dueAt) {
+            schedule(dueAt - now);
+            return;
+        }
+        long deadline = getDeadline();
+        if (isReplicating() && now < deadline) {
+            schedule(Math.min(minUpdateIntervalMillis, deadline - now));
+            return;
+        }
+        dirty = false;
+        running = true;
+        final int runGeneration = generation;
+        database.runAsync(new AsyncTask() {
+            @Override
+            public void run(Database database) {
+                runQuery(runGeneration);
+            }
+        });
+    }
+
+    private void runQuery(int runGeneration) {
+        long startedAt = System.currentTimeMillis();
+        try {
+            QueryEnumerator rows = query.run();
+            synchronized (this) {
+                if (runGeneration != generation) {
+                    // stopped while running
+                    return;
+                }
+                runCount++;
+            }
+            for (Listener listener : listeners) {
+                listener.rowsChanged(rows);
+            }
+        } catch (CouchbaseLiteException e) {
+            Log.e(Log.TAG_QUERY, "%s: Error running query", e, this);
+        } finally {
+            synchronized (this) {
+                if (runGeneration == generation) {
+                    running = false;
+                    if (started && dirty) {
+                        // keep runs at least an interval apart
+                        long runAt = Math.max(dueAt, startedAt + minUpdateIntervalMillis);
+                        schedule(Math.max(0, runAt - System.currentTimeMillis()));
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isReplicating() {
+        for (Replication replication : replications) {
+            if (replication.isRunning() && replication.getCompletedChangesCount() < replication.getChangesCount()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -19,58 +19,105 @@ package com.couchbase.lite.util;
 import android.util.Log;
 
 public class SimpleLogger implements Logger {
+
+    private volatile int level = Log.VERBOSE;
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Messages below this android.util.Log level are dropped without reaching logcat.
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
     @Override
     public void v(String tag, String msg) {
+        if (level > Log.VERBOSE) {
+            return;
+        }
         Log.v(tag, msg);
     }
 
     @Override
     public void v(String tag, String msg, Throwable tr) {
+        if (level > Log.VERBOSE) {
+            return;
+        }
         Log.v(tag, msg, tr);
     }
 
     @Override
     public void d(String tag, String msg) {
+        if (level > Log.DEBUG) {
+            return;
+        }
         Log.d(tag, msg);
     }
 
     @Override
     public void d(String tag, String msg, Throwable tr) {
+        if (level > Log.DEBUG) {
+            return;
+        }
         Log.d(tag, msg, tr);
     }
 
     @Override
     public void i(String tag, String msg) {
+        if (level > Log.INFO) {
+            return;
+        }
         Log.i(tag, msg);
     }
 
     @Override
     public void i(String tag, String msg, Throwable tr) {
+        if (level > Log.INFO) {
+            return;
+        }
         Log.i(tag, msg, tr);
     }
 
     @Override
     public void w(String tag, String msg) {
+        if (level > Log.WARN) {
+            return;
+        }
         Log.w(tag, msg);
     }
 
     @Override
     public void w(String tag, Throwable tr) {
+        if (level > Log.WARN) {
+            return;
+        }
         Log.w(tag, tr);
     }
 
     @Override
     public void w(String tag, String msg, Throwable tr) {
+        if (level > Log.WARN) {
+            return;
+        }
         Log.w(tag, msg, tr);
     }
 
     @Override
     public void e(String tag, String msg) {
+        if (level > Log.ERROR) {
+            return;
+        }
         Log.e(tag, msg);
     }
 
     @Override
     public void e(String tag, String msg, Throwable tr) {
+        if (level > Log.ERROR) {
+            return;
+        }
         Log.e(tag, msg, tr);
     }
 }
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * In-memory ring buffer of fixed-size binary event records, cheap enough to leave on in the field
+ * where verbose logging would cost more than the work being diagnosed.
+ *
+ * Each record holds the System.nanoTime() it was recorded at, the event type, the id of the
+ * recording thread and two event specific values, listed with the event types below. Once the
+ * buffer is full the oldest records are overwritten. Recording is a no-op until enable() is
+ * called.
+ *
+ * dump() writes the records, oldest first, in big-endian order: the 8 byte magic "CBLTRACE", an
+ * int format version, an int record count, then for each record a long timestamp, an int event
+ * type, an int thread id and two long values.
+ */
+public class Trace {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    public static final int FORMAT_VERSION = 1;
+
+    /** Replication changed state. a: identity hash code of the replication, b: new state ordinal. */
+    public static final int REPLICATION_STATE = 1;
+    /** HTTP request completed. a: status code, or -1 on error, b: duration in microseconds. */
+    public static final int HTTP_REQUEST = 2;
+    /** Batch of revisions processed. a: number of revisions, b: duration in microseconds. */
+    public static final int BATCH = 3;
+    /** Transaction began. a, b: unused. */
+    public static final int TRANSACTION_BEGIN = 4;
+    /** Transaction ended. a: unused, b: time taken to commit or roll back, in microseconds. */
+    public static final int TRANSACTION_END = 5;
+    /** Network changed. a: NetworkQuality.Transport ordinal, b: NetworkQuality.BandwidthClass ordinal. */
+    public static final int NETWORK_CHANGE = 6;
+
+    private static final int LONGS_PER_RECORD = 4;
+    private static final byte[] MAGIC = {'C', 'B', 'L', 'T', 'R', 'A', 'C', 'E'};
+
+    private static volatile Trace instance;
+
+    private final long[] records;
+    private final int capacity;
+    private long next;
+
+    private Trace(int capacity) {
+        this.capacity = capacity;
+        this.records = new long[capacity * LONGS_PER_RECORD];
+    }
+
+    /**
+     * Starts recording into a new buffer of DEFAULT_CAPACITY records.
+     */
+    public static void enable() {
+        enable(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Starts recording into a new buffer of the given number of records.
+     */
+    public static void enable(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        instance = new Trace(capacity);
+    }
+
+    /**
+     * Stops recording and discards the buffer.
+     */
+    public static void disable() {
+        instance = null;
+    }
+
+    public static boolean isEnabled() {
+        return instance != null;
+    }
+
+    public static void record(int event, long a, long b) {
+        Trace trace = instance;
+        if (trace != null) {
+            trace.add(System.nanoTime(), event, (int) Thread.currentThread().getId(), a, b);
+        }
+    }
+
+    /**
+     * Returns the number of records in the buffer.
+     */
+    public static int size() {
+        Trace trace = instance;
+        return trace == null ? 0 : trace.count();
+    }
+
+    /**
+     * Writes the records in the buffer to file, oldest first, and returns how many were written.
+     */
+    public static int dump(File file) throws IOException {
+        Trace trace = instance;
+        long[] snapshot;
+        int count;
+        int first;
+        if (trace == null) {
+            snapshot = new long[0];
+            count = 0;
+            first = 0;
+        } else {
+            synchronized (trace) {
+                snapshot = trace.records.clone();
+                count = trace.count();
+                first = (int) ((trace.next - count) % trace.capacity);
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.write(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(count);
+            int capacity = snapshot.length / LONGS_PER_RECORD;
+            for (int i = 0; i < count; i++) {
+                int offset = ((first + i) % capacity) * LONGS_PER_RECORD;
+                out.writeLong(snapshot[offset]);
+                out.writeInt((int) (snapshot[offset + 1] >>> 32));
+                out.writeInt((int) snapshot[offset + 1]);
+                out.writeLong(snapshot[offset + 2]);
+                out.writeLong(snapshot[offset + 3]);
+            }
+        } finally {
+            out.close();
+        }
+        return count;
+    }
+
+    private synchronized void add(long timestamp, int event, int threadId, long a, long b) {
+        int offset = (int) (next % capacity) * LONGS_PER_RECORD;
+        records[offset] = timestamp;
+        records[offset + 1] = ((long) event << 32) | (threadId & 0xffffffffL);
+        records[offset + 2] = a;
+        records[offset + 3] = b;
+        next++;
+    }
+
+    private synchronized int count() {
+        return (int) Math.min(next, capacity);
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2012 Couchbase, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.couchbase.lite.util;
+
+import com.couchbase.lite.Emitter;
+import com.couchbase.lite.Mapper;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.QueryRow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mapper that runs a group of member mappers in one view, so that indexing loads and parses each
+ * changed document once for the whole group instead of once per view.
+ *
+ * Each row emitted by member n has the key [n, key]. Restrict a query on the view to one member
+ * with restrictToMember(), and read the member's own key back with getMemberKey(). Change the
+ * map version of the view whenever a member is added or changed.
+ */
+public class ViewGroupMapper implements Mapper {
+
+    private final List<Mapper> members = new ArrayList<Mapper>();
+
+    /**
+     * Adds a member mapper and returns its member number.
+     */
+    public synchronized int add(Mapper mapper) {
+        members.add(mapper);
+        return members.size() - 1;
+    }
+
+    public synchronized int size() {
+        return members.size();
+    }
+
+    @Override
+    public void map(Map<String, Object> document, Emitter emitter) {
+        Mapper[] mappers;
+        synchronized (this) {
+            mappers = members.toArray(new Mapper[members.size()]);
+        }
+        MemberEmitter memberEmitter = new MemberEmitter(emitter);
+        for (int i = 0; i < mappers.length; i++) {
+            memberEmitter.member = i;
+            mappers[i].map(document, memberEmitter);
+        }
+    }
+
+    /**
+     * Limits the query to the rows emitted by one member.
+     */
+    public static void restrictToMember(Query query, int member) {
+        List<Object> first = Arrays.<Object>asList(member);
+        List<Object> last = Arrays.<Object>asList(member, new HashMap<String, Object>());
+        if (query.isDescending()) {
+            query.setStartKey(last);
+            query.setEndKey(first);
+        } else {
+            query.setStartKey(first);
+            query.setEndKey(last);
+        }
+    }
+
+    /**
+     * Limits the query to the rows emitted by one member with keys from startKey to endKey, in
+     * ascending order whichever way the query runs: they are swapped for a descending query.
+     */
+    public static void restrictToMember(Query query, int member, Object startKey, Object endKey) {
+        List<Object> first = Arrays.asList(member, startKey);
+        List<Object> last = Arrays.asList(member, endKey);
+        if (query.isDescending()) {
+            query.setStartKey(last);
+            query.setEndKey(first);
+        } else {
+            query.setStartKey(first);
+            query.setEndKey(last);
+        }
+    }
+
+    /**
+     * Returns the key the member emitted for this row.
+     */
+    public static Object getMemberKey(QueryRow row) {
+        return ((List<?>) row.getKey()).get(1);
+    }
+
+    private static class MemberEmitter implements Emitter {
+        private final Emitter emitter;
+        private int member;
+
+        MemberEmitter(Emitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void emit(Object key, Object value) {
+            emitter.emit(Arrays.asList(member, key), value);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.couchbase.touchdb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.text.Collator;
+
+/**
+ * Encodes JSON view keys into byte arrays that sort, compared as unsigned bytes (SQLite's BINARY
+ * collation, memcmp), in the same order TDCollateJSON sorts the JSON text. Indexing the encoded
+ * key avoids a JNI call per comparison.
+ *
+ * Unicode mode strings are encoded with the default locale's Collator sort key, which is what the
+ * native collator falls back to for non-ASCII strings. The order is NOT always the native one, so
+ * switching an existing index to these keys is a compatibility break for the rows below, which
+ * CollationTest pins:
+ * <ul>
+ * <li>Unicode mode, control characters other than tab, newline and carriage return: the Collator
+ * ignores them, the native ASCII fast path sorts them before everything else.</li>
+ * <li>Unicode mode, '`' and '^': the Collator sorts them after '%', the native priority table
+ * right after space. ASCII mode compares UTF-8 bytes on both sides and agrees.</li>
+ * <li>Both modes, \\u escapes above 0x7F: decoded to the real character here, truncated to
+ * their low byte by the native collator.</li>
+ * </ul>
+ */
+public class JSONCollationKey {
+
+    public static final int MODE_UNICODE = 0;
+    public static final int MODE_RAW = 1;
+    public static final int MODE_ASCII = 2;
+
+    // Closes an array or object, sorts before any value
+    private static final int END = 0x01;
+
+    // Type tags in CouchDB order: null, false, true, number, string, array, object
+    private static final int NULL = 0x10;
+    private static final int FALSE = 0x11;
+    private static final int TRUE = 0x12;
+    private static final int NUMBER = 0x13;
+    private static final int STRING = 0x14;
+    private static final int ARRAY = 0x15;
+    private static final int OBJECT = 0x16;
+
+    // Type tags in "raw" order: number, false, null, true, object, array, string
+    private static final int RAW_NUMBER = 0x10;
+    private static final int RAW_FALSE = 0x11;
+    private static final int RAW_NULL = 0x12;
+    private static final int RAW_TRUE = 0x13;
+    private static final int RAW_OBJECT = 0x14;
+    private static final int RAW_ARRAY = 0x15;
+    private static final int RAW_STRING = 0x16;
+
+    // Collator instances are not thread safe
+    private static final ThreadLocal<Collator> collator = new ThreadLocal<Collator>() {
+        @Override
+        protected Collator initialValue() {
+            return Collator.getInstance();
+        }
+    };
+
+    private final String json;
+    private final int mode;
+    private final ByteArrayOutputStream out;
+    private int pos;
+
+    private JSONCollationKey(String json, int mode) {
+        this.json = json;
+        this.mode = mode;
+        this.out = new ByteArrayOutputStream(json.length() + 8);
+    }
+
+    /**
+     * Returns the binary key of a JSON value, as written by the view indexer.
+     *
+     * @param mode one of MODE_UNICODE, MODE_RAW or MODE_ASCII, as for the JSON, JSON_RAW and
+     *             JSON_ASCII collations
+     * @throws IllegalArgumentException if json is not valid JSON
+     */
+    public static byte[] fromJSON(String json, int mode) {
+        if (mode != MODE_UNICODE && mode != MODE_RAW && mode != MODE_ASCII) {
+            throw new IllegalArgumentException("Invalid collation mode: " + mode);
+        }
+        JSONCollationKey key = new JSONCollationKey(json, mode);
+        key.encodeValue();
+        key.skipWhitespace();
+        if (key.pos != json.length()) {
+            throw key.syntaxError();
+        }
+        return key.out.toByteArray();
+    }
+
+    /**
+     * Compares two keys as unsigned bytes, the way SQLite's BINARY collation does.
+     */
+    public static int compare(byte[] key1, byte[] key2) {
+        int length = Math.min(key1.length, key2.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (key1[i] & 0xff) - (key2[i] & 0xff);
+            if (diff != 0) {
+                return diff < 0 ? -1 : 1;
+            }
+        }
+        return key1.length < key2.length ? -1 : (key1.length > key2.length ? 1 : 0);
+    }
+
+    private void encodeValue() {
+        skipWhitespace();
+        if (pos >= json.length()) {
+            throw syntaxError();
+        }
+        boolean raw = mode == MODE_RAW;
+        char c = json.charAt(pos);
+        switch (c) {
+            case 'n':
+                expectLiteral("null");
+                out.write(raw ? RAW_NULL : NULL);
+                break;
+            case 'f':
+                expectLiteral("false");
+                out.write(raw ? RAW_FALSE : FALSE);
+                break;
+            case 't':
+                expectLiteral("true");
+                out.write(raw ? RAW_TRUE : TRUE);
+                break;
+            case '"':
+                out.write(raw ? RAW_STRING : STRING);
+                encodeString(readString());
+                break;
+            case '[':
+                pos++;
+                out.write(raw ? RAW_ARRAY : ARRAY);
+                if (!consume(']')) {
+                    do {
+                        encodeValue();
+                    } while (consume(','));
+                    expect(']');
+                }
+                out.write(END);
+                break;
+            case '{':
+                pos++;
+                out.write(raw ? RAW_OBJECT : OBJECT);
+                if (!consume('}')) {
+                    do {
+                        skipWhitespace();
+                        if (pos >= json.length() || json.charAt(pos) != '"') {
+                            throw syntaxError();
+                        }
+                        // keys are compared like string values
+                        out.write(raw ? RAW_STRING : STRING);
+                        encodeString(readString());
+                        expect(':');
+                        encodeValue();
+                    } while (consume(','));
+                    expect('}');
+                }
+                out.write(END);
+                break;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    out.write(raw ? RAW_NUMBER : NUMBER);
+                    encodeNumber(readNumber());
+                } else {
+                    throw syntaxError();
+                }
+        }
+    }
+
+    /**
+     * Writes the IEEE 754 bits big-endian, with the sign bit flipped for positive numbers and all
+     * bits flipped for negative ones, so that the bytes sort in numeric order.
+     */
+    private void encodeNumber(double number) {
+        if (number == 0.0) {
+            // the native collator treats -0 and 0 as equal
+            number = 0.0;
+        }
+        long bits = Double.doubleToLongBits(number);
+        bits = bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (bits >>> shift) & 0xff);
+        }
+    }
+
+    /**
+     * Writes the string bytes with 0x00 escaped as 0x00 0xFF, followed by a 0x00 terminator, so a
+     * string sorts before any longer string it is a prefix of.
+     */
+    private void encodeString(String string) {
+        byte[] bytes;
+        if (mode == MODE_UNICODE) {
+            bytes = collator.get().getCollationKey(string).toByteArray();
+        } else {
+            try {
+                bytes = string.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        for (byte b : bytes) {
+            out.write(b);
+            if (b == 0) {
+                out.write(0xff);
+            }
+        }
+        out.write(0);
+    }
+
+    private String readString() {
+        StringBuilder sb = new StringBuilder();
+        pos++;
+        while (true) {
+            if (pos >= json.length()) {
+                throw syntaxError();
+            }
+            char c = json.charAt(pos++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= json.length()) {
+                throw syntaxError();
+            }
+            c = json.charAt(pos++);
+            switch (c) {
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if (pos + 4 > json.length()) {
+                        throw syntaxError();
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw syntaxError();
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+
+    private double readNumber() {
+        int start = pos;
+        while (pos < json.length() && "+-0123456789.eE".indexOf(json.charAt(pos)) >= 0) {
+            pos++;
+        }
+        try {
+            return Double.parseDouble(json.substring(start, pos));
+        } catch (NumberFormatException e) {
+            throw syntaxError();
+        }
+    }
+
+    private void expectLiteral(String literal) {
+        if (!json.startsWith(literal, pos)) {
+            throw syntaxError();
+        }
+        pos += literal.length();
+    }
+
+    private boolean consume(char c) {
+        skipWhitespace();
+        if (pos < json.length() && json.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (!consume(c)) {
+            throw syntaxError();
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException syntaxError() {
+        return new IllegalArgumentException("Invalid JSON at offset " + pos + ": " + json);
+    }
+}
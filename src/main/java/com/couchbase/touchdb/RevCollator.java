@@ -3,17 +3,82 @@ package com.couchbase.touchdb;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
 
+import java.io.UnsupportedEncodingException;
+
 public class RevCollator {
     public static void register(SQLiteDatabase database) {
         nativeRegister(database, Build.VERSION.SDK_INT);
     }
 
+    /**
+     * Returns the generation number of a rev ID ("12-abc" -> 12), or 0 if it isn't a proper
+     * rev ID. Together with getDigest() this gives a (generation INTEGER, digest BLOB) pair
+     * that sorts in the same order as the REVID collation using SQLite's built-in comparisons,
+     * as long as the two rev IDs compared are both proper or both not.
+     *
+     * A rev ID without a dash, with more than 8 digits before it or with anything but digits
+     * there is not proper. The REVID collation compares it with a proper one as plain text, so
+     * "bogus" sorts after "1-foo"; its pair has generation 0 and sorts before every proper one.
+     */
+    public static int getGeneration(String revId) {
+        int dash = revId.indexOf('-');
+        // same limit as the native collator, which falls back to plain text past 8 digits
+        if (dash <= 0 || dash > 8) {
+            return 0;
+        }
+        int generation = 0;
+        for (int i = 0; i < dash; i++) {
+            char c = revId.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            generation = 10 * generation + (c - '0');
+        }
+        return generation;
+    }
+
+    /**
+     * Returns the UTF-8 bytes of the suffix after the generation, or of the whole rev ID if it
+     * isn't a proper one, so that a BLOB comparison matches the collator's memcmp().
+     */
+    public static byte[] getDigest(String revId) {
+        String digest = getGeneration(revId) > 0 ? revId.substring(revId.indexOf('-') + 1) : revId;
+        try {
+            return digest.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Rebuilds the rev ID from the values returned by getGeneration() and getDigest().
+     */
+    public static String toRevId(int generation, byte[] digest) {
+        try {
+            String suffix = new String(digest, "UTF-8");
+            return generation > 0 ? generation + "-" + suffix : suffix;
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private static native void nativeRegister(SQLiteDatabase database, int sdkVersion);
 
     // FIXME: only public for now until moved in to same package
     public static native int testCollateRevIds(String string1, String string2);
 
+    private static final long loadLibraryNanos;
+
+    /**
+     * Time it took to load the native library, when this class was first used.
+     */
+    public static long getLoadLibraryNanos() {
+        return loadLibraryNanos;
+    }
+
     static {
+        long start = System.nanoTime();
         System.loadLibrary("com_couchbase_touchdb_RevCollator");
+        loadLibraryNanos = System.nanoTime() - start;
     }
 }
@@ -1,6 +1,10 @@
 package com.couchbase.touchdb;
 
+import java.text.CollationKey;
 import java.text.Collator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
@@ -11,10 +15,89 @@ public class TDCollateJSON {
         nativeRegisterCustomCollators(database, Build.VERSION.SDK_INT);
     }
 
+    // Called from native code for every non-ASCII string comparison. Collator instances are not
+    // thread safe, so each thread keeps its own, see UnicodeCollator.
+    private static final ThreadLocal<UnicodeCollator> unicodeCollator = new ThreadLocal<UnicodeCollator>() {
+        @Override
+        protected UnicodeCollator initialValue() {
+            return new UnicodeCollator();
+        }
+    };
+
     public static int compareStringsUnicode(String a, String b) {
-        Collator c = Collator.getInstance();
-        int res = c.compare(a, b);
-        return res;
+        return unicodeCollator.get().compare(a, b);
+    }
+
+    /**
+     * Collator for the current default locale. Sorting and index searches compare the same
+     * strings many times, and comparing their collation keys is then cheaper than comparing the
+     * strings. But a key costs more to make than a single comparison, so keys are only kept while
+     * at least half the strings looked up were recently seen; otherwise strings are compared with
+     * Collator.compare() and only remembered, to notice when caching would pay off.
+     */
+    private static class UnicodeCollator {
+        private static final int MAX_CACHED_KEYS = 64;
+        // lookups between two decisions to cache keys or not
+        private static final int SAMPLE_SIZE = 256;
+
+        private Locale locale;
+        private Collator collator;
+        // the recently seen strings, with their keys while caching
+        private final Map<String, CollationKey> keys = new LinkedHashMap<String, CollationKey>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CollationKey> eldest) {
+                return size() > MAX_CACHED_KEYS;
+            }
+        };
+        private boolean caching;
+        private int lookups;
+        private int hits;
+
+        int compare(String a, String b) {
+            Locale current = Locale.getDefault();
+            if (!current.equals(locale)) {
+                locale = current;
+                collator = Collator.getInstance(current);
+                keys.clear();
+            }
+            if (caching) {
+                return getKey(a).compareTo(getKey(b));
+            }
+            remember(a);
+            remember(b);
+            return collator.compare(a, b);
+        }
+
+        private CollationKey getKey(String string) {
+            CollationKey key = keys.get(string);
+            // a string remembered without its key, before caching started, was seen too
+            if (key != null || keys.containsKey(string)) {
+                hits++;
+            }
+            if (key == null) {
+                key = collator.getCollationKey(string);
+                keys.put(string, key);
+            }
+            countLookup();
+            return key;
+        }
+
+        private void remember(String string) {
+            if (keys.containsKey(string)) {
+                hits++;
+            }
+            // drops the key, if any, but makes the string the most recently used
+            keys.put(string, null);
+            countLookup();
+        }
+
+        private void countLookup() {
+            if (++lookups == SAMPLE_SIZE) {
+                caching = hits * 2 >= lookups;
+                lookups = 0;
+                hits = 0;
+            }
+        }
     }
 
     private static native void nativeRegisterCustomCollators(SQLiteDatabase database, int sdkVersion);
@@ -32,8 +115,19 @@ public class TDCollateJSON {
         return testCollateJSON(mode, string1.length(), string1, string2.length(), string2);
     }
 
+    private static final long loadLibraryNanos;
+
+    /**
+     * Time it took to load the native library, when this class was first used.
+     */
+    public static long getLoadLibraryNanos() {
+        return loadLibraryNanos;
+    }
+
     static {
+        long start = System.nanoTime();
         System.loadLibrary("com_couchbase_touchdb_TDCollateJSON");
+        loadLibraryNanos = System.nanoTime() - start;
     }
 
 }